@@ -0,0 +1,24 @@
+package pl.training.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+public class BenchmarkRunner {
+
+    // Accepts the usual JMH command line (e.g. a benchmark regexp or -p size=1000) and always adds the GC profiler,
+    // so every result reports throughput together with gc.alloc.rate and gc.alloc.rate.norm. Heap and other fork
+    // options come from the command line too, e.g. -jvmArgsAppend "-Xms8g -Xmx8g" to compare runs on a fixed heap
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        var options = new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .addProfiler(GCProfiler.class)
+                .resultFormat(ResultFormatType.JSON)
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,155 @@
+package pl.training.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.annotations.State;
+import pl.training.FunctionalProgramming;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static pl.training.FunctionalProgramming.*;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ListBenchmark {
+
+    @Param({"100", "1000", "10000", "100000", "1000000", "10000000"})
+    public int size;
+
+    private FunctionalProgramming.List<Integer> list;
+    private FunctionalProgramming.List<Integer> consList;
+    private ArrayList<Integer> arrayList;
+    private int[] array;
+
+    @Setup
+    public void setUp() {
+        array = new int[size];
+        arrayList = new ArrayList<>(size);
+        Integer[] boxed = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            array[i] = i;
+            boxed[i] = i;
+            arrayList.add(i);
+        }
+        list = FunctionalProgramming.List.of(boxed);
+        consList = FunctionalProgramming.List.nil();
+        for (int i = size - 1; i >= 0; i--) {
+            consList = new Cons<>(boxed[i], consList);
+        }
+    }
+
+    // Fold
+    @Benchmark
+    public int foldLeftList() {
+        return foldLeft(list, 0, Integer::sum);
+    }
+
+    @Benchmark
+    public int foldLeftConsList() {
+        return foldLeft(consList, 0, Integer::sum);
+    }
+
+    @Benchmark
+    public int foldArrayList() {
+        int result = 0;
+        for (int value : arrayList) {
+            result += value;
+        }
+        return result;
+    }
+
+    @Benchmark
+    public int foldJavaStream() {
+        return arrayList.stream().mapToInt(Integer::intValue).sum();
+    }
+
+    @Benchmark
+    public int foldLoop() {
+        int result = 0;
+        for (int value : array) {
+            result += value;
+        }
+        return result;
+    }
+
+    // Map
+    @Benchmark
+    public FunctionalProgramming.List<Integer> mapList() {
+        return map(list, x -> x + 1);
+    }
+
+    @Benchmark
+    public ArrayList<Integer> mapArrayList() {
+        ArrayList<Integer> result = new ArrayList<>(arrayList.size());
+        for (Integer value : arrayList) {
+            result.add(value + 1);
+        }
+        return result;
+    }
+
+    @Benchmark
+    public java.util.List<Integer> mapJavaStream() {
+        return arrayList.stream().map(x -> x + 1).toList();
+    }
+
+    @Benchmark
+    public int[] mapLoop() {
+        int[] result = new int[array.length];
+        for (int i = 0; i < array.length; i++) {
+            result[i] = array[i] + 1;
+        }
+        return result;
+    }
+
+    // Filter
+    @Benchmark
+    public FunctionalProgramming.List<Integer> filterList() {
+        return filter(list, FunctionalProgramming::isEven);
+    }
+
+    @Benchmark
+    public ArrayList<Integer> filterArrayList() {
+        ArrayList<Integer> result = new ArrayList<>();
+        for (Integer value : arrayList) {
+            if (isEven(value)) result.add(value);
+        }
+        return result;
+    }
+
+    @Benchmark
+    public java.util.List<Integer> filterJavaStream() {
+        return arrayList.stream().filter(FunctionalProgramming::isEven).toList();
+    }
+
+    // Append
+    @Benchmark
+    public FunctionalProgramming.List<Integer> appendList() {
+        return append(list, list);
+    }
+
+    @Benchmark
+    public ArrayList<Integer> appendArrayList() {
+        ArrayList<Integer> result = new ArrayList<>(arrayList.size() * 2);
+        result.addAll(arrayList);
+        result.addAll(arrayList);
+        return result;
+    }
+
+    // Reverse
+    @Benchmark
+    public FunctionalProgramming.List<Integer> reverseList() {
+        return reverse(list);
+    }
+
+    @Benchmark
+    public ArrayList<Integer> reverseArrayList() {
+        ArrayList<Integer> result = new ArrayList<>(arrayList);
+        Collections.reverse(result);
+        return result;
+    }
+}
@@ -0,0 +1,87 @@
+package pl.training.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.annotations.State;
+import pl.training.FunctionalProgramming;
+
+import java.util.concurrent.TimeUnit;
+
+import static pl.training.FunctionalProgramming.*;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OptionTryBenchmark {
+
+    @Param({"100", "1000", "10000", "100000", "1000000", "10000000"})
+    public int size;
+
+    // Every third value is missing or fails, so both paths of each chain are exercised
+    private static Option<Integer> lookup(int key) {
+        return key % 3 == 0 ? Option.none() : Option.some(key);
+    }
+
+    private static Integer nullableLookup(int key) {
+        return key % 3 == 0 ? null : key;
+    }
+
+    private static int parse(int value) {
+        if (value % 3 == 0) throw new IllegalArgumentException("Invalid value: " + value);
+        return value;
+    }
+
+    @Benchmark
+    public long optionChain() {
+        long result = 0;
+        for (int i = 0; i < size; i++) {
+            result += lookup(i)
+                    .map(x -> x * 2)
+                    .flatMap(x -> lookup(x + 1))
+                    .filter(FunctionalProgramming::isEven)
+                    .getOrElse(() -> 0);
+        }
+        return result;
+    }
+
+    @Benchmark
+    public long nullCheckChain() {
+        long result = 0;
+        for (int i = 0; i < size; i++) {
+            Integer value = nullableLookup(i);
+            if (value == null) continue;
+            Integer next = nullableLookup(value * 2 + 1);
+            if (next != null && isEven(next)) result += next;
+        }
+        return result;
+    }
+
+    @Benchmark
+    public long tryChain() {
+        long result = 0;
+        for (int i = 0; i < size; i++) {
+            int value = i;
+            result += Try.of(() -> parse(value))
+                    .map(x -> x * 2)
+                    .flatMap(x -> Try.of(() -> parse(x + 1)))
+                    .recover(e -> 0)
+                    .getOrElse(() -> 0);
+        }
+        return result;
+    }
+
+    @Benchmark
+    public long tryCatchChain() {
+        long result = 0;
+        for (int i = 0; i < size; i++) {
+            try {
+                result += parse(parse(i) * 2 + 1);
+            } catch (IllegalArgumentException e) {
+                // recovered as 0, like recover(e -> 0) in tryChain
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,68 @@
+package pl.training.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.annotations.State;
+import pl.training.FunctionalProgramming;
+
+import java.util.concurrent.TimeUnit;
+
+import static pl.training.FunctionalProgramming.*;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StateBenchmark {
+
+    @Param({"100", "1000", "10000", "100000", "1000000", "10000000"})
+    public int size;
+
+    private static final FunctionalProgramming.State<Rnd, Integer> NEXT_INT = new FunctionalProgramming.State<>(Rnd::nextInt);
+
+    // Running a State nests one call per flatMap, so the chain stays short and size is the number of times it is run,
+    // threading the generator from one run to the next
+    private static final FunctionalProgramming.State<Rnd, Integer> SUM_OF_TWO =
+            NEXT_INT.flatMap(a -> NEXT_INT.map(b -> a + b));
+
+    @Benchmark
+    public long stateChain() {
+        long result = 0;
+        Rnd rnd = new SimpleRandom(42);
+        for (int i = 0; i < size; i++) {
+            Pair<Integer, Rnd> pair = SUM_OF_TWO.run().apply(rnd);
+            result += pair.first();
+            rnd = pair.second();
+        }
+        return result;
+    }
+
+    @Benchmark
+    public long rndLoop() {
+        long result = 0;
+        Rnd rnd = new SimpleRandom(42);
+        for (int i = 0; i < size; i++) {
+            Pair<Integer, Rnd> first = rnd.nextInt();
+            Pair<Integer, Rnd> second = first.second().nextInt();
+            result += first.first() + second.first();
+            rnd = second.second();
+        }
+        return result;
+    }
+
+    // Same generator as SimpleRandom with the seed kept in a local, so nothing is allocated
+    @Benchmark
+    public long seedLoop() {
+        long result = 0;
+        long seed = 42;
+        for (int i = 0; i < size; i++) {
+            seed = (seed * 0x5DEECE66DL + 0xBL) & 0xFFFFFFFFFFFFL;
+            int a = (int) (seed >>> 16);
+            seed = (seed * 0x5DEECE66DL + 0xBL) & 0xFFFFFFFFFFFFL;
+            int b = (int) (seed >>> 16);
+            result += a + b;
+        }
+        return result;
+    }
+}
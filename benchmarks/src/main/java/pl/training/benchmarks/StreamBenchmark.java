@@ -0,0 +1,52 @@
+package pl.training.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.annotations.State;
+import pl.training.FunctionalProgramming;
+
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import static pl.training.FunctionalProgramming.*;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StreamBenchmark {
+
+    @Param({"100", "1000", "10000", "100000", "1000000", "10000000"})
+    public int size;
+
+    @Benchmark
+    public FunctionalProgramming.List<Integer> takeStream() {
+        return from(0).take(size).toList();
+    }
+
+    @Benchmark
+    public java.util.List<Integer> takeJavaStream() {
+        return IntStream.iterate(0, i -> i + 1).limit(size).boxed().toList();
+    }
+
+    @Benchmark
+    public FunctionalProgramming.List<Integer> filterTakeStream() {
+        return from(0).filter(FunctionalProgramming::isEven).take(size).toList();
+    }
+
+    @Benchmark
+    public java.util.List<Integer> filterTakeJavaStream() {
+        return IntStream.iterate(0, i -> i + 1).filter(FunctionalProgramming::isEven).limit(size).boxed().toList();
+    }
+
+    @Benchmark
+    public int[] filterTakeLoop() {
+        int[] result = new int[size];
+        int count = 0;
+        for (int i = 0; count < size; i++) {
+            if (isEven(i)) result[count++] = i;
+        }
+        return result;
+    }
+}
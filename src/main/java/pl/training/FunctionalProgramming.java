@@ -1,7 +1,26 @@
 package pl.training;
 
+import java.io.IOException;
+import java.lang.foreign.*;
+import java.math.BigInteger;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.*;
+import java.util.stream.Collector;
+import java.util.stream.StreamSupport;
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
 
 public class FunctionalProgramming {
 
@@ -19,6 +38,10 @@ public class FunctionalProgramming {
         return otherValue -> value + otherValue;
     }
 
+    public static IntUnaryOperator addInt(int value) {
+        return otherValue -> value + otherValue;
+    }
+
     // Recursion
     public static int factorial(int number) {
         return loop(number, 1);
@@ -38,20 +61,458 @@ public class FunctionalProgramming {
         return fibLoop(elementsLeft - 1, next, current + next);
     }
 
+    // Arbitrary precision variants
+    // Fast doubling: F(2k) = F(k) * (2F(k + 1) - F(k)) and F(2k + 1) = F(k)^2 + F(k + 1)^2, driven by the bits of n
+    public static BigInteger bigFibonacci(int elementIndex) {
+        if (elementIndex < 0) throw new IllegalArgumentException("Index must not be negative");
+        BigInteger current = BigInteger.ZERO;
+        BigInteger next = BigInteger.ONE;
+        for (int bit = Integer.highestOneBit(elementIndex); bit != 0; bit >>>= 1) {
+            BigInteger doubled = current.multiply(next.shiftLeft(1).subtract(current));
+            BigInteger doubledNext = current.multiply(current).add(next.multiply(next));
+            if ((elementIndex & bit) == 0) {
+                current = doubled;
+                next = doubledNext;
+            } else {
+                current = doubledNext;
+                next = doubled.add(doubledNext);
+            }
+        }
+        return current;
+    }
+
+    // Binary splitting keeps both operands of each multiplication about the same size; subranges are multiplied on the ForkJoinPool
+    public static final int PRODUCT_THRESHOLD = 1024;
+
+    public static BigInteger bigFactorial(int number) {
+        if (number < 0) throw new IllegalArgumentException("Number must not be negative");
+        if (number < 2) return BigInteger.ONE;
+        ProductTask task = new ProductTask(2, number + 1);
+        return number < PRODUCT_THRESHOLD ? task.compute() : ForkJoinPool.commonPool().invoke(task);
+    }
+
+    private static final class ProductTask extends RecursiveTask<BigInteger> {
+        private final int from;
+        private final int to;
+
+        private ProductTask(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected BigInteger compute() {
+            if (to - from < PRODUCT_THRESHOLD) return product(from, to);
+            int middle = (from + to) >>> 1;
+            ProductTask left = new ProductTask(from, middle);
+            left.fork();
+            BigInteger right = new ProductTask(middle, to).compute();
+            return left.join().multiply(right);
+        }
+
+        private static BigInteger product(int from, int to) {
+            if (to - from <= 8) {
+                BigInteger result = BigInteger.ONE;
+                for (int factor = from; factor < to; factor++) {
+                    result = result.multiply(BigInteger.valueOf(factor));
+                }
+                return result;
+            }
+            int middle = (from + to) >>> 1;
+            return product(from, middle).multiply(product(middle, to));
+        }
+    }
+
     // Higher-order functions
     public static String formatResult(int n, Function<Integer, Integer> f) {
         return "Result: " + f.apply(n);
     }
 
+    public static String formatIntResult(int n, IntUnaryOperator f) {
+        return "Result: " + f.applyAsInt(n);
+    }
+
     // Polymorphic functions
     public static <E> int findFirst(E[] xs, Predicate<E> predicate) {
-        return findFirstLoop(xs, predicate, 0);
+        for (int index = 0; index < xs.length; index++) {
+            if (predicate.test(xs[index])) return index;
+        }
+        return -1;
+    }
+
+    // Primitive scans (equality, inclusive range, bitmask), vectorized with the Vector API when it is available; they
+    // return -1 when nothing matches
+    public static int findFirst(int[] xs, int value) {
+        return Scan.equal(xs, value, 0, xs.length);
+    }
+
+    public static int findFirst(long[] xs, long value) {
+        return Scan.equal(xs, value, 0, xs.length);
+    }
+
+    public static int findFirst(double[] xs, double value) {
+        return Scan.equal(xs, value, 0, xs.length);
+    }
+
+    public static int findFirst(byte[] xs, byte value) {
+        return Scan.equal(xs, value, 0, xs.length);
+    }
+
+    public static int findFirstInRange(int[] xs, int min, int max) {
+        return Scan.inRange(xs, min, max, 0, xs.length);
+    }
+
+    public static int findFirstInRange(long[] xs, long min, long max) {
+        return Scan.inRange(xs, min, max, 0, xs.length);
+    }
+
+    public static int findFirstInRange(double[] xs, double min, double max) {
+        return Scan.inRange(xs, min, max, 0, xs.length);
+    }
+
+    public static int findFirstInRange(byte[] xs, byte min, byte max) {
+        return Scan.inRange(xs, min, max, 0, xs.length);
+    }
+
+    // Matches the first element with (x & mask) == expected
+    public static int findFirstMasked(int[] xs, int mask, int expected) {
+        return Scan.masked(xs, mask, expected, 0, xs.length);
+    }
+
+    public static int findFirstMasked(long[] xs, long mask, long expected) {
+        return Scan.masked(xs, mask, expected, 0, xs.length);
+    }
+
+    public static int findFirstMasked(byte[] xs, byte mask, byte expected) {
+        return Scan.masked(xs, mask, expected, 0, xs.length);
+    }
+
+    // Parallel variants scan ranges of SCAN_THRESHOLD elements on the common ForkJoinPool and still return the lowest index
+    public static final int SCAN_THRESHOLD = 1 << 16;
+
+    public static int parFindFirst(int[] xs, int value) {
+        return parScan(xs.length, (from, to) -> Scan.equal(xs, value, from, to));
+    }
+
+    public static int parFindFirst(long[] xs, long value) {
+        return parScan(xs.length, (from, to) -> Scan.equal(xs, value, from, to));
+    }
+
+    public static int parFindFirst(double[] xs, double value) {
+        return parScan(xs.length, (from, to) -> Scan.equal(xs, value, from, to));
+    }
+
+    public static int parFindFirst(byte[] xs, byte value) {
+        return parScan(xs.length, (from, to) -> Scan.equal(xs, value, from, to));
+    }
+
+    public static int parFindFirstInRange(int[] xs, int min, int max) {
+        return parScan(xs.length, (from, to) -> Scan.inRange(xs, min, max, from, to));
+    }
+
+    public static int parFindFirstInRange(long[] xs, long min, long max) {
+        return parScan(xs.length, (from, to) -> Scan.inRange(xs, min, max, from, to));
+    }
+
+    public static int parFindFirstInRange(double[] xs, double min, double max) {
+        return parScan(xs.length, (from, to) -> Scan.inRange(xs, min, max, from, to));
+    }
+
+    public static int parFindFirstInRange(byte[] xs, byte min, byte max) {
+        return parScan(xs.length, (from, to) -> Scan.inRange(xs, min, max, from, to));
+    }
+
+    public static int parFindFirstMasked(int[] xs, int mask, int expected) {
+        return parScan(xs.length, (from, to) -> Scan.masked(xs, mask, expected, from, to));
+    }
+
+    public static int parFindFirstMasked(long[] xs, long mask, long expected) {
+        return parScan(xs.length, (from, to) -> Scan.masked(xs, mask, expected, from, to));
+    }
+
+    public static int parFindFirstMasked(byte[] xs, byte mask, byte expected) {
+        return parScan(xs.length, (from, to) -> Scan.masked(xs, mask, expected, from, to));
+    }
+
+    private static int parScan(int length, IntBinaryOperator scan) {
+        if (length <= SCAN_THRESHOLD) return scan.applyAsInt(0, length);
+        return ForkJoinPool.commonPool().invoke(new ScanTask(scan, 0, length));
+    }
+
+    private static final class ScanTask extends RecursiveTask<Integer> {
+        private final IntBinaryOperator scan;
+        private final int from;
+        private final int to;
+
+        private ScanTask(IntBinaryOperator scan, int from, int to) {
+            this.scan = scan;
+            this.from = from;
+            this.to = to;
+        }
+
+        // The left half is scanned first; once it finds a match the right half is no longer needed
+        @Override
+        protected Integer compute() {
+            if (to - from <= SCAN_THRESHOLD) return scan.applyAsInt(from, to);
+            int middle = (from + to) >>> 1;
+            ScanTask right = new ScanTask(scan, middle, to);
+            right.fork();
+            int found = new ScanTask(scan, from, middle).compute();
+            if (found >= 0) {
+                right.cancel(false);
+                return found;
+            }
+            return right.join();
+        }
+    }
+
+    // Picks the kernels once, on the first primitive scan: VectorScan needs jdk.incubator.vector in the boot layer
+    // (--add-modules jdk.incubator.vector), and without it loading the class fails and ScalarScan is used instead
+    private static final class Scan {
+        private static final boolean VECTORIZED = vectorized();
+
+        private static boolean vectorized() {
+            try {
+                return VectorScan.INTS.length() > 0;
+            } catch (LinkageError e) {
+                return false;
+            }
+        }
+
+        static int equal(int[] xs, int value, int from, int to) {
+            return VECTORIZED ? VectorScan.equal(xs, value, from, to) : ScalarScan.equal(xs, value, from, to);
+        }
+
+        static int equal(long[] xs, long value, int from, int to) {
+            return VECTORIZED ? VectorScan.equal(xs, value, from, to) : ScalarScan.equal(xs, value, from, to);
+        }
+
+        static int equal(double[] xs, double value, int from, int to) {
+            return VECTORIZED ? VectorScan.equal(xs, value, from, to) : ScalarScan.equal(xs, value, from, to);
+        }
+
+        static int equal(byte[] xs, byte value, int from, int to) {
+            return VECTORIZED ? VectorScan.equal(xs, value, from, to) : ScalarScan.equal(xs, value, from, to);
+        }
+
+        static int inRange(int[] xs, int min, int max, int from, int to) {
+            return VECTORIZED ? VectorScan.inRange(xs, min, max, from, to) : ScalarScan.inRange(xs, min, max, from, to);
+        }
+
+        static int inRange(long[] xs, long min, long max, int from, int to) {
+            return VECTORIZED ? VectorScan.inRange(xs, min, max, from, to) : ScalarScan.inRange(xs, min, max, from, to);
+        }
+
+        static int inRange(double[] xs, double min, double max, int from, int to) {
+            return VECTORIZED ? VectorScan.inRange(xs, min, max, from, to) : ScalarScan.inRange(xs, min, max, from, to);
+        }
+
+        static int inRange(byte[] xs, byte min, byte max, int from, int to) {
+            return VECTORIZED ? VectorScan.inRange(xs, min, max, from, to) : ScalarScan.inRange(xs, min, max, from, to);
+        }
+
+        static int masked(int[] xs, int mask, int expected, int from, int to) {
+            return VECTORIZED ? VectorScan.masked(xs, mask, expected, from, to) : ScalarScan.masked(xs, mask, expected, from, to);
+        }
+
+        static int masked(long[] xs, long mask, long expected, int from, int to) {
+            return VECTORIZED ? VectorScan.masked(xs, mask, expected, from, to) : ScalarScan.masked(xs, mask, expected, from, to);
+        }
+
+        static int masked(byte[] xs, byte mask, byte expected, int from, int to) {
+            return VECTORIZED ? VectorScan.masked(xs, mask, expected, from, to) : ScalarScan.masked(xs, mask, expected, from, to);
+        }
+    }
+
+    private static final class ScalarScan {
+        static int equal(int[] xs, int value, int from, int to) {
+            for (int index = from; index < to; index++) {
+                if (xs[index] == value) return index;
+            }
+            return -1;
+        }
+
+        static int equal(long[] xs, long value, int from, int to) {
+            for (int index = from; index < to; index++) {
+                if (xs[index] == value) return index;
+            }
+            return -1;
+        }
+
+        static int equal(double[] xs, double value, int from, int to) {
+            for (int index = from; index < to; index++) {
+                if (xs[index] == value) return index;
+            }
+            return -1;
+        }
+
+        static int equal(byte[] xs, byte value, int from, int to) {
+            for (int index = from; index < to; index++) {
+                if (xs[index] == value) return index;
+            }
+            return -1;
+        }
+
+        static int inRange(int[] xs, int min, int max, int from, int to) {
+            for (int index = from; index < to; index++) {
+                if (xs[index] >= min && xs[index] <= max) return index;
+            }
+            return -1;
+        }
+
+        static int inRange(long[] xs, long min, long max, int from, int to) {
+            for (int index = from; index < to; index++) {
+                if (xs[index] >= min && xs[index] <= max) return index;
+            }
+            return -1;
+        }
+
+        static int inRange(double[] xs, double min, double max, int from, int to) {
+            for (int index = from; index < to; index++) {
+                if (xs[index] >= min && xs[index] <= max) return index;
+            }
+            return -1;
+        }
+
+        static int inRange(byte[] xs, byte min, byte max, int from, int to) {
+            for (int index = from; index < to; index++) {
+                if (xs[index] >= min && xs[index] <= max) return index;
+            }
+            return -1;
+        }
+
+        static int masked(int[] xs, int mask, int expected, int from, int to) {
+            for (int index = from; index < to; index++) {
+                if ((xs[index] & mask) == expected) return index;
+            }
+            return -1;
+        }
+
+        static int masked(long[] xs, long mask, long expected, int from, int to) {
+            for (int index = from; index < to; index++) {
+                if ((xs[index] & mask) == expected) return index;
+            }
+            return -1;
+        }
+
+        static int masked(byte[] xs, byte mask, byte expected, int from, int to) {
+            for (int index = from; index < to; index++) {
+                if ((xs[index] & mask) == expected) return index;
+            }
+            return -1;
+        }
     }
 
-    private static <E> int findFirstLoop(E[] xs, Predicate<E> predicate, int index) {
-        if (index == xs.length) return -1;
-        if (predicate.test(xs[index])) return index;
-        return findFirstLoop(xs, predicate, index + 1);
+    // Kernels over [from, to): full vectors up to the loop bound, then the scalar kernel for the tail.
+    // Only reached through Scan, which loads it once and falls back to ScalarScan when that fails
+    private static final class VectorScan {
+        private static final VectorSpecies<Integer> INTS = IntVector.SPECIES_PREFERRED;
+        private static final VectorSpecies<Long> LONGS = LongVector.SPECIES_PREFERRED;
+        private static final VectorSpecies<Double> DOUBLES = DoubleVector.SPECIES_PREFERRED;
+        private static final VectorSpecies<Byte> BYTES = ByteVector.SPECIES_PREFERRED;
+
+        static int equal(int[] xs, int value, int from, int to) {
+            int index = from;
+            for (int bound = from + INTS.loopBound(to - from); index < bound; index += INTS.length()) {
+                VectorMask<Integer> matches = IntVector.fromArray(INTS, xs, index).eq(value);
+                if (matches.anyTrue()) return index + matches.firstTrue();
+            }
+            return ScalarScan.equal(xs, value, index, to);
+        }
+
+        static int equal(long[] xs, long value, int from, int to) {
+            int index = from;
+            for (int bound = from + LONGS.loopBound(to - from); index < bound; index += LONGS.length()) {
+                VectorMask<Long> matches = LongVector.fromArray(LONGS, xs, index).eq(value);
+                if (matches.anyTrue()) return index + matches.firstTrue();
+            }
+            return ScalarScan.equal(xs, value, index, to);
+        }
+
+        static int equal(double[] xs, double value, int from, int to) {
+            int index = from;
+            for (int bound = from + DOUBLES.loopBound(to - from); index < bound; index += DOUBLES.length()) {
+                VectorMask<Double> matches = DoubleVector.fromArray(DOUBLES, xs, index).eq(value);
+                if (matches.anyTrue()) return index + matches.firstTrue();
+            }
+            return ScalarScan.equal(xs, value, index, to);
+        }
+
+        static int equal(byte[] xs, byte value, int from, int to) {
+            int index = from;
+            for (int bound = from + BYTES.loopBound(to - from); index < bound; index += BYTES.length()) {
+                VectorMask<Byte> matches = ByteVector.fromArray(BYTES, xs, index).eq(value);
+                if (matches.anyTrue()) return index + matches.firstTrue();
+            }
+            return ScalarScan.equal(xs, value, index, to);
+        }
+
+        static int inRange(int[] xs, int min, int max, int from, int to) {
+            int index = from;
+            for (int bound = from + INTS.loopBound(to - from); index < bound; index += INTS.length()) {
+                IntVector values = IntVector.fromArray(INTS, xs, index);
+                VectorMask<Integer> matches = values.compare(VectorOperators.GE, min).and(values.compare(VectorOperators.LE, max));
+                if (matches.anyTrue()) return index + matches.firstTrue();
+            }
+            return ScalarScan.inRange(xs, min, max, index, to);
+        }
+
+        static int inRange(long[] xs, long min, long max, int from, int to) {
+            int index = from;
+            for (int bound = from + LONGS.loopBound(to - from); index < bound; index += LONGS.length()) {
+                LongVector values = LongVector.fromArray(LONGS, xs, index);
+                VectorMask<Long> matches = values.compare(VectorOperators.GE, min).and(values.compare(VectorOperators.LE, max));
+                if (matches.anyTrue()) return index + matches.firstTrue();
+            }
+            return ScalarScan.inRange(xs, min, max, index, to);
+        }
+
+        static int inRange(double[] xs, double min, double max, int from, int to) {
+            int index = from;
+            for (int bound = from + DOUBLES.loopBound(to - from); index < bound; index += DOUBLES.length()) {
+                DoubleVector values = DoubleVector.fromArray(DOUBLES, xs, index);
+                VectorMask<Double> matches = values.compare(VectorOperators.GE, min).and(values.compare(VectorOperators.LE, max));
+                if (matches.anyTrue()) return index + matches.firstTrue();
+            }
+            return ScalarScan.inRange(xs, min, max, index, to);
+        }
+
+        static int inRange(byte[] xs, byte min, byte max, int from, int to) {
+            int index = from;
+            for (int bound = from + BYTES.loopBound(to - from); index < bound; index += BYTES.length()) {
+                ByteVector values = ByteVector.fromArray(BYTES, xs, index);
+                VectorMask<Byte> matches = values.compare(VectorOperators.GE, min).and(values.compare(VectorOperators.LE, max));
+                if (matches.anyTrue()) return index + matches.firstTrue();
+            }
+            return ScalarScan.inRange(xs, min, max, index, to);
+        }
+
+        static int masked(int[] xs, int mask, int expected, int from, int to) {
+            int index = from;
+            for (int bound = from + INTS.loopBound(to - from); index < bound; index += INTS.length()) {
+                VectorMask<Integer> matches = IntVector.fromArray(INTS, xs, index).and(mask).eq(expected);
+                if (matches.anyTrue()) return index + matches.firstTrue();
+            }
+            return ScalarScan.masked(xs, mask, expected, index, to);
+        }
+
+        static int masked(long[] xs, long mask, long expected, int from, int to) {
+            int index = from;
+            for (int bound = from + LONGS.loopBound(to - from); index < bound; index += LONGS.length()) {
+                VectorMask<Long> matches = LongVector.fromArray(LONGS, xs, index).and(mask).eq(expected);
+                if (matches.anyTrue()) return index + matches.firstTrue();
+            }
+            return ScalarScan.masked(xs, mask, expected, index, to);
+        }
+
+        static int masked(byte[] xs, byte mask, byte expected, int from, int to) {
+            int index = from;
+            for (int bound = from + BYTES.loopBound(to - from); index < bound; index += BYTES.length()) {
+                VectorMask<Byte> matches = ByteVector.fromArray(BYTES, xs, index).and(mask).eq(expected);
+                if (matches.anyTrue()) return index + matches.firstTrue();
+            }
+            return ScalarScan.masked(xs, mask, expected, index, to);
+        }
     }
 
     public static boolean isEven(int value) {
@@ -75,225 +536,3875 @@ public class FunctionalProgramming {
         return a -> f.apply(g.apply(a));
     }
 
-    // Functional data structures - List
-    public sealed interface List<A> permits Nil, Cons {
-        boolean isEmpty();
+    // Primitive specialized currying and composition (no boxing between stages; named per type so lambdas stay unambiguous)
+    public static IntUnaryOperator partialInt(int a, IntBinaryOperator fn) {
+        return b -> fn.applyAsInt(a, b);
+    }
 
-        @SuppressWarnings("unchecked")
-        static <A> List<A> of(A... xs) {
-            List<A> result = nil();
-            for (int i = xs.length - 1; i >= 0; i--) {
-                result = new Cons<>(xs[i], result);
+    public static IntFunction<IntUnaryOperator> curryInt(IntBinaryOperator fn) {
+        return a -> b -> fn.applyAsInt(a, b);
+    }
+
+    public static IntBinaryOperator uncurryInt(IntFunction<IntUnaryOperator> fn) {
+        return (a, b) -> fn.apply(a).applyAsInt(b);
+    }
+
+    public static IntUnaryOperator composeInt(IntUnaryOperator f, IntUnaryOperator g) {
+        return a -> f.applyAsInt(g.applyAsInt(a));
+    }
+
+    // Applies the functions right to left, like nested composeInt calls, in a single loop
+    public static IntUnaryOperator composeInt(IntUnaryOperator... fs) {
+        IntUnaryOperator[] stages = fs.clone();
+        return a -> {
+            for (int i = stages.length - 1; i >= 0; i--) {
+                a = stages[i].applyAsInt(a);
             }
-            return result;
+            return a;
+        };
+    }
+
+    public static LongUnaryOperator partialLong(long a, LongBinaryOperator fn) {
+        return b -> fn.applyAsLong(a, b);
+    }
+
+    public static LongFunction<LongUnaryOperator> curryLong(LongBinaryOperator fn) {
+        return a -> b -> fn.applyAsLong(a, b);
+    }
+
+    public static LongBinaryOperator uncurryLong(LongFunction<LongUnaryOperator> fn) {
+        return (a, b) -> fn.apply(a).applyAsLong(b);
+    }
+
+    public static LongUnaryOperator composeLong(LongUnaryOperator f, LongUnaryOperator g) {
+        return a -> f.applyAsLong(g.applyAsLong(a));
+    }
+
+    public static LongUnaryOperator composeLong(LongUnaryOperator... fs) {
+        LongUnaryOperator[] stages = fs.clone();
+        return a -> {
+            for (int i = stages.length - 1; i >= 0; i--) {
+                a = stages[i].applyAsLong(a);
+            }
+            return a;
+        };
+    }
+
+    public static DoubleUnaryOperator partialDouble(double a, DoubleBinaryOperator fn) {
+        return b -> fn.applyAsDouble(a, b);
+    }
+
+    public static DoubleFunction<DoubleUnaryOperator> curryDouble(DoubleBinaryOperator fn) {
+        return a -> b -> fn.applyAsDouble(a, b);
+    }
+
+    public static DoubleBinaryOperator uncurryDouble(DoubleFunction<DoubleUnaryOperator> fn) {
+        return (a, b) -> fn.apply(a).applyAsDouble(b);
+    }
+
+    public static DoubleUnaryOperator composeDouble(DoubleUnaryOperator f, DoubleUnaryOperator g) {
+        return a -> f.applyAsDouble(g.applyAsDouble(a));
+    }
+
+    public static DoubleUnaryOperator composeDouble(DoubleUnaryOperator... fs) {
+        DoubleUnaryOperator[] stages = fs.clone();
+        return a -> {
+            for (int i = stages.length - 1; i >= 0; i--) {
+                a = stages[i].applyAsDouble(a);
+            }
+            return a;
+        };
+    }
+
+    // Flattened composition: stages are kept in one array and applied by a single loop, so a long chain costs one frame
+    // per stage call instead of a nested lambda per composition. Pipelines passed as stages are spliced in, and runs of
+    // adjacent primitive stages (ofInt, ofLong, ofDouble) are fused to execute unboxed
+    public static final class Pipeline<A, B> implements Function<A, B> {
+        private static final Pipeline<?, ?> IDENTITY = new Pipeline<>(new Object[0]);
+
+        // Each stage is a Function, IntUnaryOperator, LongUnaryOperator or DoubleUnaryOperator
+        private final Object[] stages;
+        private final Function<Object, Object>[] fused;
+
+        private Pipeline(Object[] stages) {
+            this.stages = stages;
+            this.fused = fuse(stages);
         }
 
         @SuppressWarnings("unchecked")
-        static <A> List<A> nil() {
-            return (List<A>) Nil.INSTANCE;
+        public static <A> Pipeline<A, A> identity() {
+            return (Pipeline<A, A>) IDENTITY;
         }
 
-        static <A> List<A> empty() {
-            return nil();
+        public static <A, B> Pipeline<A, B> of(Function<A, B> f) {
+            return Pipeline.<A>identity().then(f);
         }
-    }
 
-    public record Nil<A>() implements List<A> {
-        private static final Nil<?> INSTANCE = new Nil<>();
+        // For chains assembled at run time (e.g. from configuration); stage types are checked only when applied
+        public static <A, B> Pipeline<A, B> of(Iterable<? extends Function<?, ?>> stages) {
+            ArrayList<Object> flattened = new ArrayList<>();
+            for (Function<?, ?> stage : stages) {
+                if (stage instanceof Pipeline<?, ?> pipeline) {
+                    flattened.addAll(Arrays.asList(pipeline.stages));
+                } else {
+                    flattened.add(stage);
+                }
+            }
+            return new Pipeline<>(flattened.toArray());
+        }
 
-        @Override
-        public boolean isEmpty() {
-            return true;
+        public static Pipeline<Integer, Integer> ofInt(IntUnaryOperator f) {
+            return new Pipeline<>(new Object[]{f});
         }
 
-        @Override
-        public String toString() {
-            return "Nil";
+        public static Pipeline<Long, Long> ofLong(LongUnaryOperator f) {
+            return new Pipeline<>(new Object[]{f});
+        }
+
+        public static Pipeline<Double, Double> ofDouble(DoubleUnaryOperator f) {
+            return new Pipeline<>(new Object[]{f});
+        }
+
+        public <C> Pipeline<A, C> then(Function<? super B, ? extends C> f) {
+            Object[] appended = f instanceof Pipeline<?, ?> pipeline ? pipeline.stages : new Object[]{f};
+            Object[] combined = Arrays.copyOf(stages, stages.length + appended.length);
+            System.arraycopy(appended, 0, combined, stages.length, appended.length);
+            return new Pipeline<>(combined);
         }
-    }
 
-    public record Cons<A>(A head, List<A> tail) implements List<A> {
         @Override
-        public boolean isEmpty() {
-            return false;
+        public <C> Pipeline<A, C> andThen(Function<? super B, ? extends C> after) {
+            return then(after);
         }
 
         @Override
-        public String toString() {
-            return "Cons(" + head + ", " + tail + ")";
+        public <C> Pipeline<C, B> compose(Function<? super C, ? extends A> before) {
+            return Pipeline.<C>identity().then(before).then(this);
         }
-    }
 
-    // List operations
-    public static int sum(List<Integer> xs) {
-        return switch (xs) {
-            case Nil<Integer> nil -> 0;
-            case Cons<Integer> cons -> cons.head() + sum(cons.tail());
-        };
-    }
+        public int size() {
+            return stages.length;
+        }
 
-    public static <A> List<A> tail(List<A> xs) {
-        return switch (xs) {
-            case Cons<A> cons -> cons.tail();
-            case Nil<A> nil -> List.nil();
-        };
-    }
+        @Override
+        @SuppressWarnings("unchecked")
+        public B apply(A a) {
+            Object value = a;
+            for (Function<Object, Object> stage : fused) {
+                value = stage.apply(value);
+            }
+            return (B) value;
+        }
 
-    public static <A> List<A> setHead(List<A> xs, A x) {
-        return switch (xs) {
+        @SuppressWarnings("unchecked")
+        private static Function<Object, Object>[] fuse(Object[] stages) {
+            ArrayList<Function<Object, Object>> result = new ArrayList<>();
+            int from = 0;
+            while (from < stages.length) {
+                Class<?> kind = kindOf(stages[from]);
+                int to = from + 1;
+                if (kind != Function.class) {
+                    while (to < stages.length && kindOf(stages[to]) == kind) {
+                        to++;
+                    }
+                }
+                Object[] run = Arrays.copyOfRange(stages, from, to);
+                if (kind == IntUnaryOperator.class) {
+                    IntUnaryOperator[] ops = Arrays.copyOf(run, run.length, IntUnaryOperator[].class);
+                    result.add(value -> {
+                        int x = (Integer) value;
+                        for (IntUnaryOperator op : ops) {
+                            x = op.applyAsInt(x);
+                        }
+                        return x;
+                    });
+                } else if (kind == LongUnaryOperator.class) {
+                    LongUnaryOperator[] ops = Arrays.copyOf(run, run.length, LongUnaryOperator[].class);
+                    result.add(value -> {
+                        long x = (Long) value;
+                        for (LongUnaryOperator op : ops) {
+                            x = op.applyAsLong(x);
+                        }
+                        return x;
+                    });
+                } else if (kind == DoubleUnaryOperator.class) {
+                    DoubleUnaryOperator[] ops = Arrays.copyOf(run, run.length, DoubleUnaryOperator[].class);
+                    result.add(value -> {
+                        double x = (Double) value;
+                        for (DoubleUnaryOperator op : ops) {
+                            x = op.applyAsDouble(x);
+                        }
+                        return x;
+                    });
+                } else {
+                    result.add((Function<Object, Object>) run[0]);
+                }
+                from = to;
+            }
+            return result.toArray(Function[]::new);
+        }
+
+        private static Class<?> kindOf(Object stage) {
+            return switch (stage) {
+                case IntUnaryOperator op -> IntUnaryOperator.class;
+                case LongUnaryOperator op -> LongUnaryOperator.class;
+                case DoubleUnaryOperator op -> DoubleUnaryOperator.class;
+                default -> Function.class;
+            };
+        }
+    }
+
+    // Memoization (bounded concurrent caches; keys and values must be non-null, though the Pair keys of memoized
+    // BiFunctions may hold null arguments)
+    public static <A, B> Function<A, B> memoize(Function<A, B> f, int capacity) {
+        return memoize(f, MemoCache.create(capacity, Eviction.LRU));
+    }
+
+    public static <A, B> Function<A, B> memoize(Function<A, B> f, MemoCache<A, B> cache) {
+        return a -> cache.get(a, f);
+    }
+
+    public static <A, B, C> BiFunction<A, B, C> memoize(BiFunction<A, B, C> f, int capacity) {
+        return memoize(f, MemoCache.create(capacity, Eviction.LRU));
+    }
+
+    public static <A, B, C> BiFunction<A, B, C> memoize(BiFunction<A, B, C> f, MemoCache<Pair<A, B>, C> cache) {
+        return (a, b) -> cache.get(new Pair<>(a, b), key -> f.apply(key.first(), key.second()));
+    }
+
+    // LRU evicts the least recently used entry; FREQUENCY (TinyLFU) only admits a new key over the LRU victim
+    // if the key has been requested more often, so a burst of one-off keys cannot flush a small hot set
+    public enum Eviction {
+        LRU, FREQUENCY
+    }
+
+    public record CacheStats(long hits, long misses, long evictions) {
+        public double hitRate() {
+            long requests = hits + misses;
+            return requests == 0 ? 1.0 : (double) hits / requests;
+        }
+    }
+
+    // Entries are futures in a ConcurrentHashMap, so concurrent callers with the same key wait for a single computation.
+    // Recency order is kept under a lock that writers take and readers only try, dropping the update when it is contended
+    public static final class MemoCache<K, V> {
+        private final int capacity;
+        private final long ttlNanos;
+        private final ConcurrentHashMap<K, Entry<V>> entries = new ConcurrentHashMap<>();
+        private final LinkedHashMap<K, Entry<V>> order = new LinkedHashMap<>(16, 0.75f, true);
+        private final ReentrantLock lock = new ReentrantLock();
+        private final FrequencySketch sketch;
+        private final LongAdder hits = new LongAdder();
+        private final LongAdder misses = new LongAdder();
+        private final LongAdder evictions = new LongAdder();
+
+        private MemoCache(int capacity, Eviction eviction, long ttlNanos) {
+            this.capacity = capacity;
+            this.ttlNanos = ttlNanos;
+            this.sketch = eviction == Eviction.FREQUENCY ? new FrequencySketch(capacity) : null;
+        }
+
+        public static <K, V> MemoCache<K, V> create(int capacity, Eviction eviction) {
+            if (capacity < 1) throw new IllegalArgumentException("Capacity must be positive");
+            return new MemoCache<>(capacity, eviction, 0);
+        }
+
+        // Entries expire ttl after their value was computed
+        public static <K, V> MemoCache<K, V> create(int capacity, Eviction eviction, Duration ttl) {
+            if (capacity < 1) throw new IllegalArgumentException("Capacity must be positive");
+            if (ttl.isNegative() || ttl.isZero()) throw new IllegalArgumentException("TTL must be positive");
+            return new MemoCache<>(capacity, eviction, ttl.toNanos());
+        }
+
+        private static final class Entry<V> {
+            private final CompletableFuture<V> value = new CompletableFuture<>();
+            private volatile long computedAt;
+        }
+
+        public V get(K key, Function<? super K, ? extends V> compute) {
+            Objects.requireNonNull(key, "Memoized function called with a null key");
+            if (sketch != null) sketch.increment(key);
+            while (true) {
+                Entry<V> entry = entries.get(key);
+                if (entry != null) {
+                    if (!isExpired(entry)) {
+                        hits.increment();
+                        touch(key);
+                        return await(entry);
+                    }
+                    discard(key, entry);
+                    continue;
+                }
+                Entry<V> created = new Entry<>();
+                if (entries.putIfAbsent(key, created) != null) continue;
+                misses.increment();
+                V value;
+                try {
+                    value = Objects.requireNonNull(compute.apply(key), "Memoized function returned null");
+                } catch (RuntimeException | Error exception) {
+                    entries.remove(key, created);
+                    created.value.completeExceptionally(exception);
+                    throw exception;
+                }
+                created.computedAt = System.nanoTime();
+                created.value.complete(value);
+                admit(key, created);
+                return value;
+            }
+        }
+
+        private boolean isExpired(Entry<V> entry) {
+            return ttlNanos > 0 && entry.value.isDone() && System.nanoTime() - entry.computedAt > ttlNanos;
+        }
+
+        // Waiters rethrow the failure of the computation they joined
+        private V await(Entry<V> entry) {
+            try {
+                return entry.value.join();
+            } catch (CompletionException exception) {
+                if (exception.getCause() instanceof RuntimeException cause) throw cause;
+                if (exception.getCause() instanceof Error cause) throw cause;
+                throw exception;
+            }
+        }
+
+        private void touch(K key) {
+            if (lock.tryLock()) {
+                try {
+                    order.get(key);
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+
+        private void admit(K key, Entry<V> entry) {
+            lock.lock();
+            try {
+                if (entries.get(key) != entry) return;
+                order.put(key, entry);
+                while (order.size() > capacity) {
+                    K victim = order.keySet().iterator().next();
+                    if (sketch != null && !victim.equals(key) && sketch.frequency(key) <= sketch.frequency(victim)) {
+                        victim = key;
+                    }
+                    entries.remove(victim, order.remove(victim));
+                    evictions.increment();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void discard(K key, Entry<V> entry) {
+            entries.remove(key, entry);
+            lock.lock();
+            try {
+                order.remove(key, entry);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        public void invalidate(K key) {
+            Entry<V> entry = entries.get(Objects.requireNonNull(key, "Cannot invalidate a null key"));
+            if (entry != null) discard(key, entry);
+        }
+
+        public void clear() {
+            lock.lock();
+            try {
+                order.forEach(entries::remove);
+                order.clear();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        public int size() {
+            return entries.size();
+        }
+
+        public CacheStats stats() {
+            return new CacheStats(hits.sum(), misses.sum(), evictions.sum());
+        }
+    }
+
+    // Count-min sketch of 4 rows with counters capped at 15; all counters are halved every 10 * width increments,
+    // so old popularity fades. Updated without locking, so counts are approximate under contention
+    private static final class FrequencySketch {
+        private static final int ROWS = 4;
+        private static final int MAX_COUNT = 15;
+        private static final int[] SEEDS = {0x9E3779B9, 0x85EBCA6B, 0xC2B2AE35, 0x27D4EB2F};
+
+        private final int[] counters;
+        private final int width;
+        private final int sampleSize;
+        private int additions;
+
+        private FrequencySketch(int capacity) {
+            width = Integer.highestOneBit(Math.min(Math.max(capacity, 16), 1 << 26) - 1) << 1;
+            counters = new int[ROWS * width];
+            sampleSize = 10 * width;
+        }
+
+        private int index(Object key, int row) {
+            int hash = key.hashCode() * SEEDS[row];
+            hash ^= hash >>> 16;
+            return row * width + (hash & (width - 1));
+        }
+
+        void increment(Object key) {
+            for (int row = 0; row < ROWS; row++) {
+                int index = index(key, row);
+                if (counters[index] < MAX_COUNT) counters[index]++;
+            }
+            if (++additions >= sampleSize) {
+                for (int i = 0; i < counters.length; i++) {
+                    counters[i] >>>= 1;
+                }
+                additions /= 2;
+            }
+        }
+
+        int frequency(Object key) {
+            int frequency = MAX_COUNT;
+            for (int row = 0; row < ROWS; row++) {
+                frequency = Math.min(frequency, counters[index(key, row)]);
+            }
+            return frequency;
+        }
+    }
+
+    // Functional data structures - List
+    public sealed interface List<A> extends Iterable<A> permits Nil, Cons, Chunk {
+        boolean isEmpty();
+
+        int size();
+
+        // Nil or a cons cell for the first element, for code that pattern matches on head and tail only
+        ListView<A> uncons();
+
+        @Override
+        default Iterator<A> iterator() {
+            return new ListIterator<>(this);
+        }
+
+        @Override
+        default Spliterator<A> spliterator() {
+            return new ListSpliterator<>(this, size());
+        }
+
+        default java.util.stream.Stream<A> stream() {
+            return StreamSupport.stream(spliterator(), false);
+        }
+
+        default java.util.stream.Stream<A> parallelStream() {
+            return StreamSupport.stream(spliterator(), true);
+        }
+
+        static <A> Collector<A, ?, List<A>> collector() {
+            return Collector.of(ListBuilder<A>::new, ListBuilder::add, ListBuilder::combine, ListBuilder::build);
+        }
+
+        @SafeVarargs
+        static <A> List<A> of(A... xs) {
+            return Chunk.view(Arrays.copyOf(xs, xs.length, Object[].class), xs.length, nil());
+        }
+
+        @SuppressWarnings("unchecked")
+        static <A> List<A> nil() {
+            return (List<A>) Nil.INSTANCE;
+        }
+
+        static <A> List<A> empty() {
+            return nil();
+        }
+    }
+
+    public sealed interface ListView<A> permits Nil, Cons {}
+
+    public record Nil<A>() implements List<A>, ListView<A> {
+        private static final Nil<?> INSTANCE = new Nil<>();
+
+        @Override
+        public boolean isEmpty() {
+            return true;
+        }
+
+        @Override
+        public int size() {
+            return 0;
+        }
+
+        @Override
+        public ListView<A> uncons() {
+            return this;
+        }
+
+        @Override
+        public String toString() {
+            return "Nil";
+        }
+    }
+
+    // Plain cell, as built by prepending. The record defaults for equals, hashCode and toString recurse down the
+    // tail, so they are replaced by loops; size counts the leading cells and adds the size cached by the first Chunk
+    public record Cons<A>(A head, List<A> tail) implements List<A>, ListView<A> {
+        @Override
+        public boolean isEmpty() {
+            return false;
+        }
+
+        @Override
+        public int size() {
+            int cells = 0;
+            List<A> current = this;
+            while (current instanceof Cons<A> cons) {
+                cells++;
+                current = cons.tail();
+            }
+            return cells + current.size();
+        }
+
+        @Override
+        public ListView<A> uncons() {
+            return this;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof List<?> list && listEquals(this, list);
+        }
+
+        @Override
+        public int hashCode() {
+            return listHashCode(this);
+        }
+
+        @Override
+        public String toString() {
+            return listToString(this);
+        }
+    }
+
+    // Unrolled node holding a segment of up to SIZE elements, usually a view into an array shared with the other
+    // segments of the list. It caches the size of the list from here on and, like String.hash, its hash code.
+    // Traversals step an index through the segment, so views are only created by drop, tail, uncons and splits
+    public static sealed class Chunk<A> implements List<A> permits DeferredChunk {
+        static final int SIZE = 32;
+
+        private final Object[] items;
+        private final int offset;
+        private final int end;
+        private final List<A> next;
+        private final int size;
+        // 0 means not computed yet unless hashIsZero is set
+        private int hash;
+        private boolean hashIsZero;
+
+        private Chunk(Object[] items, int offset, int end, List<A> next) {
+            this(items, offset, end, next, end - offset + next.size());
+        }
+
+        // DeferredChunk passes no segment and answers the segment accessors from its materialized list instead
+        private Chunk(Object[] items, int offset, int end, List<A> next, int size) {
+            this.items = items;
+            this.offset = offset;
+            this.end = end;
+            this.next = next;
+            this.size = size;
+        }
+
+        // Splits items[0, length) into segments sharing the array, without copying
+        static <A> List<A> view(Object[] items, int length, List<A> next) {
+            List<A> result = next;
+            for (int segmentEnd = length; segmentEnd > 0; segmentEnd -= SIZE) {
+                result = new Chunk<>(items, Math.max(0, segmentEnd - SIZE), segmentEnd, result);
+            }
+            return result;
+        }
+
+        int length() {
+            return end - offset;
+        }
+
+        @SuppressWarnings("unchecked")
+        A get(int index) {
+            return (A) items[offset + index];
+        }
+
+        List<A> next() {
+            return next;
+        }
+
+        void copyTo(Object[] target, int index) {
+            System.arraycopy(items, offset, target, index, length());
+        }
+
+        List<A> drop(int n) {
+            if (n == 0) return this;
+            return n < length() ? new Chunk<>(items, offset + n, end, next) : next;
+        }
+
+        public A head() {
+            return get(0);
+        }
+
+        public List<A> tail() {
+            return drop(1);
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return false;
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public ListView<A> uncons() {
+            return new Cons<>(head(), tail());
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (this == other) return true;
+            if (other instanceof Chunk<?> chunk && hash != 0 && chunk.hash != 0 && hash != chunk.hash) return false;
+            return other instanceof List<?> list && listEquals(this, list);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash != 0 || hashIsZero ? hash : listHashCode(this);
+        }
+
+        @Override
+        public String toString() {
+            return listToString(this);
+        }
+    }
+
+    // Concatenation of a Chain seen as a list: it knows its size up front and builds ordinary Chunks on first access
+    // to the elements. Validation keeps accumulated errors this way, so combining two error lists is O(1)
+    private static final class DeferredChunk<A> extends Chunk<A> {
+        private final Chain<A> source;
+        // Racy but idempotent like String.hash; Chunk fields are final, so a published result is complete
+        private Chunk<A> materialized;
+
+        private DeferredChunk(Chain<A> source, int size) {
+            super(null, 0, 0, List.nil(), size);
+            this.source = source;
+        }
+
+        static <A> List<A> concat(List<A> xs, List<A> ys) {
+            if (xs.isEmpty()) return ys;
+            if (ys.isEmpty()) return xs;
+            return new DeferredChunk<>(chain(xs).concat(chain(ys)), xs.size() + ys.size());
+        }
+
+        static <A> List<A> of(Chain<A> source, int size) {
+            return size == 0 ? List.nil() : new DeferredChunk<>(source, size);
+        }
+
+        static <A> Chain<A> chain(List<A> xs) {
+            return xs instanceof DeferredChunk<A> deferred ? deferred.source : Chain.fromList(xs);
+        }
+
+        private Chunk<A> materialized() {
+            Chunk<A> result = materialized;
+            if (result == null) {
+                result = (Chunk<A>) source.foldLeft(new ListBuilder<A>(), ListBuilder::add).build();
+                materialized = result;
+            }
+            return result;
+        }
+
+        @Override
+        int length() {
+            return materialized().length();
+        }
+
+        @Override
+        A get(int index) {
+            return materialized().get(index);
+        }
+
+        @Override
+        List<A> next() {
+            return materialized().next();
+        }
+
+        @Override
+        void copyTo(Object[] target, int index) {
+            materialized().copyTo(target, index);
+        }
+
+        @Override
+        List<A> drop(int n) {
+            return materialized().drop(n);
+        }
+    }
+
+    // Element-wise whatever the mix of cells and Chunks on either side. Each side is a cursor of (node, index into
+    // the node when it is a Chunk), and runs where both sides are in a Chunk are compared without per-element dispatch
+    private static boolean listEquals(List<?> xs, List<?> ys) {
+        if (xs.size() != ys.size()) return false;
+        List<?> left = xs;
+        List<?> right = ys;
+        int leftIndex = 0;
+        int rightIndex = 0;
+        while (!left.isEmpty()) {
+            if (left == right && leftIndex == rightIndex) return true;
+            if (left instanceof Chunk<?> leftChunk && right instanceof Chunk<?> rightChunk) {
+                int length = Math.min(leftChunk.length() - leftIndex, rightChunk.length() - rightIndex);
+                for (int i = 0; i < length; i++) {
+                    if (!Objects.equals(leftChunk.get(leftIndex + i), rightChunk.get(rightIndex + i))) return false;
+                }
+                leftIndex += length;
+                rightIndex += length;
+            } else {
+                Object leftHead = left instanceof Chunk<?> leftChunk ? leftChunk.get(leftIndex++) : ((Cons<?>) left).head();
+                Object rightHead = right instanceof Chunk<?> rightChunk ? rightChunk.get(rightIndex++) : ((Cons<?>) right).head();
+                if (!Objects.equals(leftHead, rightHead)) return false;
+            }
+            if (left instanceof Cons<?> cons) {
+                left = cons.tail();
+            } else if (left instanceof Chunk<?> chunk && leftIndex == chunk.length()) {
+                left = chunk.next();
+                leftIndex = 0;
+            }
+            if (right instanceof Cons<?> cons) {
+                right = cons.tail();
+            } else if (right instanceof Chunk<?> chunk && rightIndex == chunk.length()) {
+                right = chunk.next();
+                rightIndex = 0;
+            }
+        }
+        return true;
+    }
+
+    // hash(x :: xs) = 31 * hash(xs) + hash(x), computed from the first cached Chunk (or Nil) back to the front;
+    // Chunks passed on the way cache their result, plain cells have nowhere to keep it
+    private static int listHashCode(List<?> xs) {
+        Deque<List<?>> pending = new ArrayDeque<>();
+        List<?> current = xs;
+        while (current instanceof Cons<?> || current instanceof Chunk<?> chunk && chunk.hash == 0 && !chunk.hashIsZero) {
+            pending.push(current);
+            current = current instanceof Cons<?> cons ? cons.tail() : ((Chunk<?>) current).next();
+        }
+        int result = current instanceof Chunk<?> chunk ? chunk.hash : 0;
+        while (!pending.isEmpty()) {
+            switch (pending.pop()) {
+                case Chunk<?> chunk -> {
+                    for (int i = chunk.length() - 1; i >= 0; i--) {
+                        result = 31 * result + Objects.hashCode(chunk.get(i));
+                    }
+                    if (result == 0) {
+                        chunk.hashIsZero = true;
+                    } else {
+                        chunk.hash = result;
+                    }
+                }
+                case Cons<?> cons -> result = 31 * result + Objects.hashCode(cons.head());
+                case Nil<?> nil -> {}
+            }
+        }
+        return result;
+    }
+
+    private static <A> String listToString(List<A> xs) {
+        StringBuilder result = new StringBuilder();
+        int size = foldLeft(xs, 0, (count, a) -> {
+            result.append("Cons(").append(a).append(", ");
+            return count + 1;
+        });
+        return result.append("Nil").append(")".repeat(size)).toString();
+    }
+
+    // Steps an index through each Chunk instead of calling tail(), which would allocate a view per element
+    private static final class ListIterator<A> implements Iterator<A> {
+        private List<A> current;
+        private int index;
+
+        private ListIterator(List<A> current) {
+            this.current = current;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !current.isEmpty();
+        }
+
+        @Override
+        public A next() {
+            switch (current) {
+                case Chunk<A> chunk -> {
+                    A value = chunk.get(index);
+                    if (++index == chunk.length()) {
+                        current = chunk.next();
+                        index = 0;
+                    }
+                    return value;
+                }
+                case Cons<A> cons -> {
+                    current = cons.tail();
+                    return cons.head();
+                }
+                case Nil<A> nil -> throw new NoSuchElementException();
+            }
+        }
+    }
+
+    // Splits by skipping whole segments, so a split neither copies elements nor loses the exact size.
+    // Like ListIterator it keeps an index into the current Chunk; a view is only created when splitting
+    private static final class ListSpliterator<A> implements Spliterator<A> {
+        private static final int MIN_SPLIT_SIZE = 2 * Chunk.SIZE;
+
+        private List<A> current;
+        private int index;
+        private int remaining;
+
+        private ListSpliterator(List<A> current, int remaining) {
+            this.current = current;
+            this.remaining = remaining;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super A> action) {
+            if (remaining == 0) return false;
+            switch (current) {
+                case Chunk<A> chunk -> {
+                    action.accept(chunk.get(index));
+                    if (++index == chunk.length()) {
+                        current = chunk.next();
+                        index = 0;
+                    }
+                }
+                case Cons<A> cons -> {
+                    action.accept(cons.head());
+                    current = cons.tail();
+                }
+                case Nil<A> nil -> {
+                    return false;
+                }
+            }
+            remaining--;
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super A> action) {
+            while (remaining > 0 && !current.isEmpty()) {
+                switch (current) {
+                    case Chunk<A> chunk -> {
+                        int length = Math.min(remaining, chunk.length() - index);
+                        for (int i = 0; i < length; i++) {
+                            action.accept(chunk.get(index + i));
+                        }
+                        remaining -= length;
+                        index += length;
+                        if (index == chunk.length()) {
+                            current = chunk.next();
+                            index = 0;
+                        }
+                    }
+                    case Cons<A> cons -> {
+                        action.accept(cons.head());
+                        current = cons.tail();
+                        remaining--;
+                    }
+                    case Nil<A> nil -> {}
+                }
+            }
+        }
+
+        @Override
+        public Spliterator<A> trySplit() {
+            if (remaining < MIN_SPLIT_SIZE) return null;
+            int prefixSize = remaining >>> 1;
+            List<A> start = index > 0 && current instanceof Chunk<A> chunk ? chunk.drop(index) : current;
+            ListSpliterator<A> prefix = new ListSpliterator<>(start, prefixSize);
+            current = drop(start, prefixSize);
+            index = 0;
+            remaining -= prefixSize;
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            return remaining;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | SIZED | SUBSIZED | IMMUTABLE;
+        }
+    }
+
+    // Transient list builder: appends at the tail into 32-element segments and freezes them into Chunks once
+    static final class ListBuilder<A> {
+        private Object[][] segments = new Object[8][];
+        private int segmentCount;
+        private Object[] current = new Object[Chunk.SIZE];
+        private int count;
+        private boolean built;
+
+        ListBuilder<A> add(A value) {
+            if (built) throw new IllegalStateException("ListBuilder already built");
+            current[count++] = value;
+            if (count == current.length) {
+                addSegment(current);
+                current = new Object[Chunk.SIZE];
+                count = 0;
+            }
+            return this;
+        }
+
+        ListBuilder<A> addAll(List<A> xs) {
+            return foldLeft(xs, this, ListBuilder::add);
+        }
+
+        ListBuilder<A> combine(ListBuilder<A> other) {
+            if (count > 0) {
+                addSegment(Arrays.copyOf(current, count));
+                count = 0;
+            }
+            for (int i = 0; i < other.segmentCount; i++) {
+                addSegment(other.segments[i]);
+            }
+            current = other.count > 0 ? Arrays.copyOf(other.current, Chunk.SIZE) : current;
+            count = other.count;
+            return this;
+        }
+
+        private void addSegment(Object[] segment) {
+            if (segmentCount == segments.length) {
+                segments = Arrays.copyOf(segments, segmentCount * 2);
+            }
+            segments[segmentCount++] = segment;
+        }
+
+        List<A> build() {
+            if (built) throw new IllegalStateException("ListBuilder already built");
+            built = true;
+            List<A> result = Chunk.view(current, count, List.nil());
+            for (int i = segmentCount - 1; i >= 0; i--) {
+                result = Chunk.view(segments[i], segments[i].length, result);
+            }
+            return result;
+        }
+    }
+
+    // List operations
+    public static int sum(List<Integer> xs) {
+        return foldLeft(xs, 0, Integer::sum);
+    }
+
+    public static <A> List<A> tail(List<A> xs) {
+        return switch (xs) {
+            case Cons<A> cons -> cons.tail();
+            case Chunk<A> chunk -> chunk.tail();
+            case Nil<A> nil -> List.nil();
+        };
+    }
+
+    public static <A> List<A> setHead(List<A> xs, A x) {
+        return switch (xs) {
             case Nil<A> nil -> List.nil();
             case Cons<A> cons -> new Cons<>(x, cons.tail());
+            case Chunk<A> chunk -> new Cons<>(x, chunk.tail());
+        };
+    }
+
+    public static <A> List<A> prepend(List<A> xs, A x) {
+        return switch (xs) {
+            case Cons<A> cons -> new Cons<>(x, xs);
+            case Chunk<A> chunk -> new Cons<>(x, xs);
+            case Nil<A> nil -> List.nil();
+        };
+    }
+
+    // Copies xs1 once into Chunks that share xs2 as their tail
+    public static <A> List<A> append(List<A> xs1, List<A> xs2) {
+        if (xs2.isEmpty()) return xs1;
+        Object[] items = toArray(xs1);
+        return Chunk.view(items, items.length, xs2);
+    }
+
+    // Java has no tail call elimination, so every traversal below is a loop and uses bounded stack
+    public static <A> List<A> drop(List<A> xs, int n) {
+        List<A> current = xs;
+        int remaining = n;
+        while (remaining > 0 && !current.isEmpty()) {
+            switch (current) {
+                case Chunk<A> chunk -> {
+                    int skipped = Math.min(remaining, chunk.length());
+                    current = chunk.drop(skipped);
+                    remaining -= skipped;
+                }
+                case Cons<A> cons -> {
+                    current = cons.tail();
+                    remaining--;
+                }
+                case Nil<A> nil -> {}
+            }
+        }
+        return current;
+    }
+
+    public static <A> List<A> dropWhile(List<A> xs, Predicate<A> predicate) {
+        List<A> current = xs;
+        while (true) {
+            switch (current) {
+                case Chunk<A> chunk -> {
+                    int dropped = 0;
+                    while (dropped < chunk.length() && predicate.test(chunk.get(dropped))) {
+                        dropped++;
+                    }
+                    if (dropped < chunk.length()) return chunk.drop(dropped);
+                    current = chunk.next();
+                }
+                case Cons<A> cons -> {
+                    if (!predicate.test(cons.head())) return cons;
+                    current = cons.tail();
+                }
+                case Nil<A> nil -> {
+                    return nil;
+                }
+            }
+        }
+    }
+
+    // The reversed list acts as an explicit stack of pending applications of f
+    public static <A, B> B foldRight(List<A> xs, B value, BiFunction<A, B, B> f) {
+        return foldLeft(reverse(xs), value, (b, a) -> f.apply(a, b));
+    }
+
+    public static <A, B> B foldLeft(List<A> xs, B value, BiFunction<B, A, B> f) {
+        B accumulator = value;
+        List<A> current = xs;
+        while (!current.isEmpty()) {
+            switch (current) {
+                case Chunk<A> chunk -> {
+                    for (int i = 0; i < chunk.length(); i++) {
+                        accumulator = f.apply(accumulator, chunk.get(i));
+                    }
+                    current = chunk.next();
+                }
+                case Cons<A> cons -> {
+                    accumulator = f.apply(accumulator, cons.head());
+                    current = cons.tail();
+                }
+                case Nil<A> nil -> {}
+            }
+        }
+        return accumulator;
+    }
+
+    private static <A> Object[] toArray(List<A> xs) {
+        Object[] items = new Object[xs.size()];
+        int index = 0;
+        List<A> current = xs;
+        while (!current.isEmpty()) {
+            switch (current) {
+                case Chunk<A> chunk -> {
+                    chunk.copyTo(items, index);
+                    index += chunk.length();
+                    current = chunk.next();
+                }
+                case Cons<A> cons -> {
+                    items[index++] = cons.head();
+                    current = cons.tail();
+                }
+                case Nil<A> nil -> {}
+            }
+        }
+        return items;
+    }
+
+    // map, filter and flatMap make a single forward pass, allocating only for the elements they output
+    public static <A, B> List<B> map(List<A> xs, Function<A, B> f) {
+        return foldLeft(xs, new ListBuilder<B>(), (builder, a) -> builder.add(f.apply(a))).build();
+    }
+
+    public static <A> List<A> filter(List<A> xs, Predicate<A> f) {
+        return foldLeft(xs, new ListBuilder<A>(), (builder, a) -> f.test(a) ? builder.add(a) : builder).build();
+    }
+
+    public static <A, B> List<B> flatMap(List<A> xa, Function<A, List<B>> f) {
+        return foldLeft(xa, new ListBuilder<B>(), (builder, a) -> builder.addAll(f.apply(a))).build();
+    }
+
+    public static <A> List<A> reverse(List<A> xs) {
+        Object[] items = toArray(xs);
+        for (int i = 0, j = items.length - 1; i < j; i++, j--) {
+            Object item = items[i];
+            items[i] = items[j];
+            items[j] = item;
+        }
+        return Chunk.view(items, items.length, List.nil());
+    }
+
+    // Sorting (stable; the list is copied into one array, sorted in place and wrapped as chunks)
+    public static <A extends Comparable<? super A>> List<A> sort(List<A> xs) {
+        return sort(xs, Comparator.naturalOrder());
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <A> List<A> sort(List<A> xs, Comparator<? super A> comparator) {
+        A[] items = (A[]) toArray(xs);
+        Arrays.sort(items, comparator);
+        return Chunk.view(items, items.length, List.nil());
+    }
+
+    public static <A extends Comparable<? super A>> List<A> parSort(List<A> xs) {
+        return parSort(xs, Comparator.naturalOrder());
+    }
+
+    // Sorts chunks on the common ForkJoinPool and merges them; small lists are sorted sequentially
+    @SuppressWarnings("unchecked")
+    public static <A> List<A> parSort(List<A> xs, Comparator<? super A> comparator) {
+        A[] items = (A[]) toArray(xs);
+        Arrays.parallelSort(items, comparator);
+        return Chunk.view(items, items.length, List.nil());
+    }
+
+    // Catenable list (O(1) concatenation, amortized O(1) uncons)
+    public sealed interface Chain<A> permits Chain.Empty, Chain.Singleton, WrappedList, Chain.Append {
+        record Empty<A>() implements Chain<A> {
+            private static final Empty<?> INSTANCE = new Empty<>();
+        }
+
+        record Singleton<A>(A value) implements Chain<A> {}
+
+        record Append<A>(Chain<A> left, Chain<A> right) implements Chain<A> {}
+
+        @SuppressWarnings("unchecked")
+        static <A> Chain<A> empty() {
+            return (Chain<A>) Empty.INSTANCE;
+        }
+
+        static <A> Chain<A> one(A value) {
+            return new Singleton<>(value);
+        }
+
+        static <A> Chain<A> fromList(List<A> xs) {
+            return switch (xs) {
+                case Nil<A> nil -> empty();
+                case Cons<A> cons -> new WrappedList<>(cons);
+                case Chunk<A> chunk -> new WrappedList<>(chunk);
+            };
+        }
+
+        @SafeVarargs
+        static <A> Chain<A> of(A... xs) {
+            return fromList(List.of(xs));
+        }
+
+        default boolean isEmpty() {
+            return this instanceof Empty<A>;
+        }
+
+        default Chain<A> concat(Chain<A> other) {
+            if (isEmpty()) return other;
+            if (other.isEmpty()) return this;
+            return new Append<>(this, other);
+        }
+
+        default Chain<A> prepend(A value) {
+            return one(value).concat(this);
+        }
+
+        default Chain<A> append(A value) {
+            return concat(one(value));
+        }
+
+        // Walks down the left spine once and rebuilds the remainder right-nested, so repeated uncons stays cheap
+        default Option<Pair<A, Chain<A>>> uncons() {
+            Chain<A> current = this;
+            List<Chain<A>> rights = List.nil();
+            while (true) {
+                switch (current) {
+                    case Append<A> append -> {
+                        rights = new Cons<>(append.right(), rights);
+                        current = append.left();
+                    }
+                    case Singleton<A> singleton -> {
+                        return Option.some(new Pair<>(singleton.value(), rebuild(rights, empty())));
+                    }
+                    case WrappedList<A> wrapped -> {
+                        if (wrapped.list().uncons() instanceof Cons<A>(var head, var tail)) {
+                            return Option.some(new Pair<>(head, rebuild(rights, fromList(tail))));
+                        }
+                        current = empty();
+                    }
+                    case Empty<A> empty -> {
+                        if (!(rights instanceof Cons<Chain<A>> cons)) return Option.none();
+                        current = cons.head();
+                        rights = cons.tail();
+                    }
+                }
+            }
+        }
+
+        private static <A> Chain<A> rebuild(List<Chain<A>> rights, Chain<A> first) {
+            return first.concat(foldRight(rights, Chain.<A>empty(), Chain::concat));
+        }
+
+        @SuppressWarnings("unchecked")
+        default <B> B foldLeft(B value, BiFunction<B, A, B> f) {
+            B accumulator = value;
+            Deque<Chain<A>> pending = new ArrayDeque<>();
+            pending.push(this);
+            while (!pending.isEmpty()) {
+                switch (pending.pop()) {
+                    case Empty<A> empty -> {}
+                    case Singleton<A> singleton -> accumulator = f.apply(accumulator, singleton.value());
+                    case WrappedList<A> wrapped -> accumulator = FunctionalProgramming.foldLeft(wrapped.list(), accumulator, f);
+                    case Append<A> append -> {
+                        pending.push(append.right());
+                        pending.push(append.left());
+                    }
+                }
+            }
+            return accumulator;
+        }
+
+        // Visits the chain right to left, so the last wrapped list becomes the shared tail of the result
+        default List<A> toList() {
+            List<A> result = List.nil();
+            Deque<Chain<A>> pending = new ArrayDeque<>();
+            pending.push(this);
+            while (!pending.isEmpty()) {
+                switch (pending.pop()) {
+                    case Empty<A> empty -> {}
+                    case Singleton<A> singleton -> result = new Cons<>(singleton.value(), result);
+                    case WrappedList<A> wrapped -> result = FunctionalProgramming.append(wrapped.list(), result);
+                    case Append<A> append -> {
+                        pending.push(append.left());
+                        pending.push(append.right());
+                    }
+                }
+            }
+            return result;
+        }
+    }
+
+    // Chain node for a non-empty List; kept out of Chain's public members so callers never depend on its layout
+    record WrappedList<A>(List<A> list) implements Chain<A> {}
+
+    // Primitive specialized lists
+    public static final class IntList {
+        private static final int CHUNK_SIZE = 32;
+        private static final IntList EMPTY = new IntList(new int[0], 0, 0, null);
+
+        // Elements live unboxed in values[offset, end); chunks may be views into one shared array
+        private final int[] values;
+        private final int offset;
+        private final int end;
+        private final IntList next;
+        private final int size;
+
+        private IntList(int[] values, int offset, int end, IntList next) {
+            this.values = values;
+            this.offset = offset;
+            this.end = end;
+            this.next = next;
+            this.size = end - offset + (next == null ? 0 : next.size);
+        }
+
+        public static IntList empty() {
+            return EMPTY;
+        }
+
+        public static IntList of(int... xs) {
+            return view(Arrays.copyOf(xs, xs.length), xs.length);
+        }
+
+        public static IntList fromList(List<Integer> xs) {
+            int[] values = new int[xs.size()];
+            int index = 0;
+            for (Integer x : xs) {
+                values[index++] = x;
+            }
+            return view(values, values.length);
+        }
+
+        private static IntList view(int[] values, int length) {
+            IntList result = EMPTY;
+            for (int chunkEnd = length; chunkEnd > 0; chunkEnd -= CHUNK_SIZE) {
+                result = new IntList(values, Math.max(0, chunkEnd - CHUNK_SIZE), chunkEnd, result);
+            }
+            return result;
+        }
+
+        public boolean isEmpty() {
+            return size == 0;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public int head() {
+            if (isEmpty()) throw new NoSuchElementException("IntList.head");
+            return values[offset];
+        }
+
+        public IntList tail() {
+            if (isEmpty()) return EMPTY;
+            return offset + 1 < end ? new IntList(values, offset + 1, end, next) : next;
+        }
+
+        public IntList prepend(int x) {
+            if (isEmpty()) return new IntList(new int[]{x}, 0, 1, EMPTY);
+            int length = end - offset;
+            if (length >= CHUNK_SIZE) return new IntList(new int[]{x}, 0, 1, this);
+            int[] chunk = new int[length + 1];
+            chunk[0] = x;
+            System.arraycopy(values, offset, chunk, 1, length);
+            return new IntList(chunk, 0, chunk.length, next);
+        }
+
+        public int foldLeft(int value, IntBinaryOperator f) {
+            int accumulator = value;
+            for (IntList node = this; node != EMPTY; node = node.next) {
+                for (int i = node.offset; i < node.end; i++) {
+                    accumulator = f.applyAsInt(accumulator, node.values[i]);
+                }
+            }
+            return accumulator;
+        }
+
+        public int sum() {
+            int result = 0;
+            for (IntList node = this; node != EMPTY; node = node.next) {
+                for (int i = node.offset; i < node.end; i++) {
+                    result += node.values[i];
+                }
+            }
+            return result;
+        }
+
+        public IntList map(IntUnaryOperator f) {
+            int[] result = new int[size];
+            int index = 0;
+            for (IntList node = this; node != EMPTY; node = node.next) {
+                for (int i = node.offset; i < node.end; i++) {
+                    result[index++] = f.applyAsInt(node.values[i]);
+                }
+            }
+            return view(result, index);
+        }
+
+        public IntList filter(IntPredicate f) {
+            int[] result = new int[size];
+            int index = 0;
+            for (IntList node = this; node != EMPTY; node = node.next) {
+                for (int i = node.offset; i < node.end; i++) {
+                    if (f.test(node.values[i])) result[index++] = node.values[i];
+                }
+            }
+            return view(index < result.length ? Arrays.copyOf(result, index) : result, index);
+        }
+
+        public IntList reverse() {
+            int[] result = new int[size];
+            int index = size;
+            for (IntList node = this; node != EMPTY; node = node.next) {
+                for (int i = node.offset; i < node.end; i++) {
+                    result[--index] = node.values[i];
+                }
+            }
+            return view(result, result.length);
+        }
+
+        public int[] toArray() {
+            int[] result = new int[size];
+            int index = 0;
+            for (IntList node = this; node != EMPTY; node = node.next) {
+                System.arraycopy(node.values, node.offset, result, index, node.end - node.offset);
+                index += node.end - node.offset;
+            }
+            return result;
+        }
+
+        // Boxes straight into one array that the resulting Chunks share
+        public List<Integer> toList() {
+            Object[] items = new Object[size];
+            int index = 0;
+            for (IntList node = this; node != EMPTY; node = node.next) {
+                for (int i = node.offset; i < node.end; i++) {
+                    items[index++] = node.values[i];
+                }
+            }
+            return Chunk.view(items, items.length, List.nil());
+        }
+
+        // Element-wise, whatever the chunking; same contract as Arrays.equals/hashCode over int[]
+        @Override
+        public boolean equals(Object other) {
+            if (this == other) return true;
+            if (!(other instanceof IntList list) || size != list.size) return false;
+            IntList left = this;
+            IntList right = list;
+            int leftIndex = left.offset;
+            int rightIndex = right.offset;
+            while (left != EMPTY) {
+                if (left == right && leftIndex == rightIndex) return true;
+                int length = Math.min(left.end - leftIndex, right.end - rightIndex);
+                if (!Arrays.equals(left.values, leftIndex, leftIndex + length, right.values, rightIndex, rightIndex + length)) {
+                    return false;
+                }
+                leftIndex += length;
+                rightIndex += length;
+                if (leftIndex == left.end) {
+                    left = left.next;
+                    leftIndex = left.offset;
+                }
+                if (rightIndex == right.end) {
+                    right = right.next;
+                    rightIndex = right.offset;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = 1;
+            for (IntList node = this; node != EMPTY; node = node.next) {
+                for (int i = node.offset; i < node.end; i++) {
+                    result = 31 * result + Integer.hashCode(node.values[i]);
+                }
+            }
+            return result;
+        }
+
+        @Override
+        public String toString() {
+            return "IntList" + Arrays.toString(toArray());
+        }
+    }
+
+    public static final class LongList {
+        private static final int CHUNK_SIZE = 32;
+        private static final LongList EMPTY = new LongList(new long[0], 0, 0, null);
+
+        // Elements live unboxed in values[offset, end); chunks may be views into one shared array
+        private final long[] values;
+        private final int offset;
+        private final int end;
+        private final LongList next;
+        private final int size;
+
+        private LongList(long[] values, int offset, int end, LongList next) {
+            this.values = values;
+            this.offset = offset;
+            this.end = end;
+            this.next = next;
+            this.size = end - offset + (next == null ? 0 : next.size);
+        }
+
+        public static LongList empty() {
+            return EMPTY;
+        }
+
+        public static LongList of(long... xs) {
+            return view(Arrays.copyOf(xs, xs.length), xs.length);
+        }
+
+        public static LongList fromList(List<Long> xs) {
+            long[] values = new long[xs.size()];
+            int index = 0;
+            for (Long x : xs) {
+                values[index++] = x;
+            }
+            return view(values, values.length);
+        }
+
+        private static LongList view(long[] values, int length) {
+            LongList result = EMPTY;
+            for (int chunkEnd = length; chunkEnd > 0; chunkEnd -= CHUNK_SIZE) {
+                result = new LongList(values, Math.max(0, chunkEnd - CHUNK_SIZE), chunkEnd, result);
+            }
+            return result;
+        }
+
+        public boolean isEmpty() {
+            return size == 0;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public long head() {
+            if (isEmpty()) throw new NoSuchElementException("LongList.head");
+            return values[offset];
+        }
+
+        public LongList tail() {
+            if (isEmpty()) return EMPTY;
+            return offset + 1 < end ? new LongList(values, offset + 1, end, next) : next;
+        }
+
+        public LongList prepend(long x) {
+            if (isEmpty()) return new LongList(new long[]{x}, 0, 1, EMPTY);
+            int length = end - offset;
+            if (length >= CHUNK_SIZE) return new LongList(new long[]{x}, 0, 1, this);
+            long[] chunk = new long[length + 1];
+            chunk[0] = x;
+            System.arraycopy(values, offset, chunk, 1, length);
+            return new LongList(chunk, 0, chunk.length, next);
+        }
+
+        public long foldLeft(long value, LongBinaryOperator f) {
+            long accumulator = value;
+            for (LongList node = this; node != EMPTY; node = node.next) {
+                for (int i = node.offset; i < node.end; i++) {
+                    accumulator = f.applyAsLong(accumulator, node.values[i]);
+                }
+            }
+            return accumulator;
+        }
+
+        public long sum() {
+            long result = 0;
+            for (LongList node = this; node != EMPTY; node = node.next) {
+                for (int i = node.offset; i < node.end; i++) {
+                    result += node.values[i];
+                }
+            }
+            return result;
+        }
+
+        public LongList map(LongUnaryOperator f) {
+            long[] result = new long[size];
+            int index = 0;
+            for (LongList node = this; node != EMPTY; node = node.next) {
+                for (int i = node.offset; i < node.end; i++) {
+                    result[index++] = f.applyAsLong(node.values[i]);
+                }
+            }
+            return view(result, index);
+        }
+
+        public LongList filter(LongPredicate f) {
+            long[] result = new long[size];
+            int index = 0;
+            for (LongList node = this; node != EMPTY; node = node.next) {
+                for (int i = node.offset; i < node.end; i++) {
+                    if (f.test(node.values[i])) result[index++] = node.values[i];
+                }
+            }
+            return view(index < result.length ? Arrays.copyOf(result, index) : result, index);
+        }
+
+        public LongList reverse() {
+            long[] result = new long[size];
+            int index = size;
+            for (LongList node = this; node != EMPTY; node = node.next) {
+                for (int i = node.offset; i < node.end; i++) {
+                    result[--index] = node.values[i];
+                }
+            }
+            return view(result, result.length);
+        }
+
+        public long[] toArray() {
+            long[] result = new long[size];
+            int index = 0;
+            for (LongList node = this; node != EMPTY; node = node.next) {
+                System.arraycopy(node.values, node.offset, result, index, node.end - node.offset);
+                index += node.end - node.offset;
+            }
+            return result;
+        }
+
+        // Boxes straight into one array that the resulting Chunks share
+        public List<Long> toList() {
+            Object[] items = new Object[size];
+            int index = 0;
+            for (LongList node = this; node != EMPTY; node = node.next) {
+                for (int i = node.offset; i < node.end; i++) {
+                    items[index++] = node.values[i];
+                }
+            }
+            return Chunk.view(items, items.length, List.nil());
+        }
+
+        // Element-wise, whatever the chunking; same contract as Arrays.equals/hashCode over long[]
+        @Override
+        public boolean equals(Object other) {
+            if (this == other) return true;
+            if (!(other instanceof LongList list) || size != list.size) return false;
+            LongList left = this;
+            LongList right = list;
+            int leftIndex = left.offset;
+            int rightIndex = right.offset;
+            while (left != EMPTY) {
+                if (left == right && leftIndex == rightIndex) return true;
+                int length = Math.min(left.end - leftIndex, right.end - rightIndex);
+                if (!Arrays.equals(left.values, leftIndex, leftIndex + length, right.values, rightIndex, rightIndex + length)) {
+                    return false;
+                }
+                leftIndex += length;
+                rightIndex += length;
+                if (leftIndex == left.end) {
+                    left = left.next;
+                    leftIndex = left.offset;
+                }
+                if (rightIndex == right.end) {
+                    right = right.next;
+                    rightIndex = right.offset;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = 1;
+            for (LongList node = this; node != EMPTY; node = node.next) {
+                for (int i = node.offset; i < node.end; i++) {
+                    result = 31 * result + Long.hashCode(node.values[i]);
+                }
+            }
+            return result;
+        }
+
+        @Override
+        public String toString() {
+            return "LongList" + Arrays.toString(toArray());
+        }
+    }
+
+    public static final class DoubleList {
+        private static final int CHUNK_SIZE = 32;
+        private static final DoubleList EMPTY = new DoubleList(new double[0], 0, 0, null);
+
+        // Elements live unboxed in values[offset, end); chunks may be views into one shared array
+        private final double[] values;
+        private final int offset;
+        private final int end;
+        private final DoubleList next;
+        private final int size;
+
+        private DoubleList(double[] values, int offset, int end, DoubleList next) {
+            this.values = values;
+            this.offset = offset;
+            this.end = end;
+            this.next = next;
+            this.size = end - offset + (next == null ? 0 : next.size);
+        }
+
+        public static DoubleList empty() {
+            return EMPTY;
+        }
+
+        public static DoubleList of(double... xs) {
+            return view(Arrays.copyOf(xs, xs.length), xs.length);
+        }
+
+        public static DoubleList fromList(List<Double> xs) {
+            double[] values = new double[xs.size()];
+            int index = 0;
+            for (Double x : xs) {
+                values[index++] = x;
+            }
+            return view(values, values.length);
+        }
+
+        private static DoubleList view(double[] values, int length) {
+            DoubleList result = EMPTY;
+            for (int chunkEnd = length; chunkEnd > 0; chunkEnd -= CHUNK_SIZE) {
+                result = new DoubleList(values, Math.max(0, chunkEnd - CHUNK_SIZE), chunkEnd, result);
+            }
+            return result;
+        }
+
+        public boolean isEmpty() {
+            return size == 0;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public double head() {
+            if (isEmpty()) throw new NoSuchElementException("DoubleList.head");
+            return values[offset];
+        }
+
+        public DoubleList tail() {
+            if (isEmpty()) return EMPTY;
+            return offset + 1 < end ? new DoubleList(values, offset + 1, end, next) : next;
+        }
+
+        public DoubleList prepend(double x) {
+            if (isEmpty()) return new DoubleList(new double[]{x}, 0, 1, EMPTY);
+            int length = end - offset;
+            if (length >= CHUNK_SIZE) return new DoubleList(new double[]{x}, 0, 1, this);
+            double[] chunk = new double[length + 1];
+            chunk[0] = x;
+            System.arraycopy(values, offset, chunk, 1, length);
+            return new DoubleList(chunk, 0, chunk.length, next);
+        }
+
+        public double foldLeft(double value, DoubleBinaryOperator f) {
+            double accumulator = value;
+            for (DoubleList node = this; node != EMPTY; node = node.next) {
+                for (int i = node.offset; i < node.end; i++) {
+                    accumulator = f.applyAsDouble(accumulator, node.values[i]);
+                }
+            }
+            return accumulator;
+        }
+
+        public double sum() {
+            double result = 0;
+            for (DoubleList node = this; node != EMPTY; node = node.next) {
+                for (int i = node.offset; i < node.end; i++) {
+                    result += node.values[i];
+                }
+            }
+            return result;
+        }
+
+        public DoubleList map(DoubleUnaryOperator f) {
+            double[] result = new double[size];
+            int index = 0;
+            for (DoubleList node = this; node != EMPTY; node = node.next) {
+                for (int i = node.offset; i < node.end; i++) {
+                    result[index++] = f.applyAsDouble(node.values[i]);
+                }
+            }
+            return view(result, index);
+        }
+
+        public DoubleList filter(DoublePredicate f) {
+            double[] result = new double[size];
+            int index = 0;
+            for (DoubleList node = this; node != EMPTY; node = node.next) {
+                for (int i = node.offset; i < node.end; i++) {
+                    if (f.test(node.values[i])) result[index++] = node.values[i];
+                }
+            }
+            return view(index < result.length ? Arrays.copyOf(result, index) : result, index);
+        }
+
+        public DoubleList reverse() {
+            double[] result = new double[size];
+            int index = size;
+            for (DoubleList node = this; node != EMPTY; node = node.next) {
+                for (int i = node.offset; i < node.end; i++) {
+                    result[--index] = node.values[i];
+                }
+            }
+            return view(result, result.length);
+        }
+
+        public double[] toArray() {
+            double[] result = new double[size];
+            int index = 0;
+            for (DoubleList node = this; node != EMPTY; node = node.next) {
+                System.arraycopy(node.values, node.offset, result, index, node.end - node.offset);
+                index += node.end - node.offset;
+            }
+            return result;
+        }
+
+        // Boxes straight into one array that the resulting Chunks share
+        public List<Double> toList() {
+            Object[] items = new Object[size];
+            int index = 0;
+            for (DoubleList node = this; node != EMPTY; node = node.next) {
+                for (int i = node.offset; i < node.end; i++) {
+                    items[index++] = node.values[i];
+                }
+            }
+            return Chunk.view(items, items.length, List.nil());
+        }
+
+        // Element-wise, whatever the chunking; same contract as Arrays.equals/hashCode over double[]
+        @Override
+        public boolean equals(Object other) {
+            if (this == other) return true;
+            if (!(other instanceof DoubleList list) || size != list.size) return false;
+            DoubleList left = this;
+            DoubleList right = list;
+            int leftIndex = left.offset;
+            int rightIndex = right.offset;
+            while (left != EMPTY) {
+                if (left == right && leftIndex == rightIndex) return true;
+                int length = Math.min(left.end - leftIndex, right.end - rightIndex);
+                if (!Arrays.equals(left.values, leftIndex, leftIndex + length, right.values, rightIndex, rightIndex + length)) {
+                    return false;
+                }
+                leftIndex += length;
+                rightIndex += length;
+                if (leftIndex == left.end) {
+                    left = left.next;
+                    leftIndex = left.offset;
+                }
+                if (rightIndex == right.end) {
+                    right = right.next;
+                    rightIndex = right.offset;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = 1;
+            for (DoubleList node = this; node != EMPTY; node = node.next) {
+                for (int i = node.offset; i < node.end; i++) {
+                    result = 31 * result + Double.hashCode(node.values[i]);
+                }
+            }
+            return result;
+        }
+
+        @Override
+        public String toString() {
+            return "DoubleList" + Arrays.toString(toArray());
+        }
+    }
+
+    // Off-heap primitive list (Foreign Function & Memory API); memory lives as long as the Arena it was allocated in
+    public static final class OffHeapLongList {
+        private static final ValueLayout.OfLong LAYOUT = ValueLayout.JAVA_LONG;
+
+        private final Arena arena;
+        private final MemorySegment segment;
+
+        private OffHeapLongList(Arena arena, MemorySegment segment) {
+            this.arena = arena;
+            this.segment = segment;
+        }
+
+        public static OffHeapLongList empty(Arena arena) {
+            return new OffHeapLongList(arena, MemorySegment.NULL);
+        }
+
+        public static OffHeapLongList of(Arena arena, long... xs) {
+            return new OffHeapLongList(arena, arena.allocateFrom(LAYOUT, xs));
+        }
+
+        public static OffHeapLongList fromLongList(Arena arena, LongList xs) {
+            return of(arena, xs.toArray());
+        }
+
+        public static OffHeapLongList fromList(Arena arena, List<Long> xs) {
+            MemorySegment segment = arena.allocate(LAYOUT, xs.size());
+            long index = 0;
+            for (long x : xs) {
+                segment.setAtIndex(LAYOUT, index++, x);
+            }
+            return new OffHeapLongList(arena, segment);
+        }
+
+        // Maps the file read-only into the arena, so loading copies nothing onto the heap
+        public static OffHeapLongList load(Arena arena, Path path) throws IOException {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                long byteSize = channel.size();
+                if (byteSize % LAYOUT.byteSize() != 0) {
+                    throw new IOException("File size is not a multiple of " + LAYOUT.byteSize() + " bytes: " + path);
+                }
+                return new OffHeapLongList(arena, channel.map(FileChannel.MapMode.READ_ONLY, 0, byteSize, arena));
+            }
+        }
+
+        public void save(Path path) throws IOException {
+            try (Arena mapping = Arena.ofConfined();
+                 FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                         StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                if (segment.byteSize() == 0) return;
+                channel.map(FileChannel.MapMode.READ_WRITE, 0, segment.byteSize(), mapping).copyFrom(segment);
+            }
+        }
+
+        public Arena arena() {
+            return arena;
+        }
+
+        public long size() {
+            return segment.byteSize() / LAYOUT.byteSize();
+        }
+
+        public boolean isEmpty() {
+            return size() == 0;
+        }
+
+        public long get(long index) {
+            return segment.getAtIndex(LAYOUT, Objects.checkIndex(index, size()));
+        }
+
+        public long head() {
+            if (isEmpty()) throw new NoSuchElementException("OffHeapLongList.head");
+            return segment.getAtIndex(LAYOUT, 0);
+        }
+
+        // Slices are views over the same memory and share its lifetime
+        public OffHeapLongList slice(long from, long to) {
+            Objects.checkFromToIndex(from, to, size());
+            return new OffHeapLongList(arena, segment.asSlice(from * LAYOUT.byteSize(), (to - from) * LAYOUT.byteSize()));
+        }
+
+        public OffHeapLongList tail() {
+            return isEmpty() ? this : slice(1, size());
+        }
+
+        public OffHeapLongList drop(long n) {
+            return slice(Math.clamp(n, 0, size()), size());
+        }
+
+        public OffHeapLongList take(long n) {
+            return slice(0, Math.clamp(n, 0, size()));
+        }
+
+        public long foldLeft(long value, LongBinaryOperator f) {
+            long accumulator = value;
+            long size = size();
+            for (long i = 0; i < size; i++) {
+                accumulator = f.applyAsLong(accumulator, segment.getAtIndex(LAYOUT, i));
+            }
+            return accumulator;
+        }
+
+        public long sum() {
+            long result = 0;
+            long size = size();
+            for (long i = 0; i < size; i++) {
+                result += segment.getAtIndex(LAYOUT, i);
+            }
+            return result;
+        }
+
+        public OffHeapLongList map(LongUnaryOperator f) {
+            long size = size();
+            MemorySegment result = arena.allocate(LAYOUT, size);
+            for (long i = 0; i < size; i++) {
+                result.setAtIndex(LAYOUT, i, f.applyAsLong(segment.getAtIndex(LAYOUT, i)));
+            }
+            return new OffHeapLongList(arena, result);
+        }
+
+        // Matches are marked in an on-heap bitmap (1 bit per element) first, so the predicate runs once per element
+        // and the result is allocated at its exact size; arena memory cannot be freed piecewise before the arena closes
+        public OffHeapLongList filter(LongPredicate f) {
+            long size = size();
+            long[] matches = new long[Math.toIntExact((size + 63) >>> 6)];
+            long count = 0;
+            for (long i = 0; i < size; i++) {
+                if (f.test(segment.getAtIndex(LAYOUT, i))) {
+                    matches[(int) (i >>> 6)] |= 1L << i;
+                    count++;
+                }
+            }
+            MemorySegment result = arena.allocate(LAYOUT, count);
+            long index = 0;
+            for (int word = 0; word < matches.length; word++) {
+                for (long bits = matches[word]; bits != 0; bits &= bits - 1) {
+                    long i = ((long) word << 6) + Long.numberOfTrailingZeros(bits);
+                    result.setAtIndex(LAYOUT, index++, segment.getAtIndex(LAYOUT, i));
+                }
+            }
+            return new OffHeapLongList(arena, result);
+        }
+
+        public OffHeapLongList reverse() {
+            long size = size();
+            MemorySegment result = arena.allocate(LAYOUT, size);
+            for (long i = 0; i < size; i++) {
+                result.setAtIndex(LAYOUT, size - 1 - i, segment.getAtIndex(LAYOUT, i));
+            }
+            return new OffHeapLongList(arena, result);
+        }
+
+        public long[] toArray() {
+            return segment.toArray(LAYOUT);
+        }
+
+        public LongList toLongList() {
+            return LongList.of(toArray());
+        }
+
+        public List<Long> toList() {
+            ListBuilder<Long> builder = new ListBuilder<>();
+            long size = size();
+            for (long i = 0; i < size; i++) {
+                builder.add(segment.getAtIndex(LAYOUT, i));
+            }
+            return builder.build();
+        }
+
+        @Override
+        public String toString() {
+            return "OffHeapLongList(size = " + size() + ")";
+        }
+    }
+
+    // Persistent vector (bit-partitioned trie with 32-way branching)
+    public static final class Vector<A> {
+        private static final int BITS = 5;
+        private static final int WIDTH = 1 << BITS;
+        private static final int MASK = WIDTH - 1;
+        private static final Vector<?> EMPTY = new Vector<>(new Object[WIDTH], 0, 0, 0);
+
+        // Elements occupy the absolute trie positions [start, end), so both ends can grow by adding a new root
+        private final Object[] root;
+        private final int shift;
+        private final long start;
+        private final long end;
+
+        private Vector(Object[] root, int shift, long start, long end) {
+            this.root = root;
+            this.shift = shift;
+            this.start = start;
+            this.end = end;
+        }
+
+        @SuppressWarnings("unchecked")
+        public static <A> Vector<A> empty() {
+            return (Vector<A>) EMPTY;
+        }
+
+        @SafeVarargs
+        public static <A> Vector<A> of(A... xs) {
+            Builder<A> builder = builder();
+            for (A x : xs) {
+                builder.add(x);
+            }
+            return builder.build();
+        }
+
+        public static <A> Vector<A> fromList(List<A> xs) {
+            return FunctionalProgramming.foldLeft(xs, Vector.<A>builder(), Builder::add).build();
+        }
+
+        public static <A> Builder<A> builder() {
+            return new Builder<>();
+        }
+
+        private static long capacity(int shift) {
+            return 1L << (shift + BITS);
+        }
+
+        public int size() {
+            return (int) (end - start);
+        }
+
+        public boolean isEmpty() {
+            return start == end;
+        }
+
+        private Object[] leafFor(long index) {
+            Object[] node = root;
+            for (int level = shift; level > 0; level -= BITS) {
+                node = (Object[]) node[(int) ((index >>> level) & MASK)];
+            }
+            return node;
+        }
+
+        @SuppressWarnings("unchecked")
+        public A get(int index) {
+            Objects.checkIndex(index, size());
+            long position = start + index;
+            return (A) leafFor(position)[(int) (position & MASK)];
+        }
+
+        private static Object[] assoc(Object[] node, int shift, long index, Object value) {
+            Object[] copy = node == null ? new Object[WIDTH] : node.clone();
+            int slot = (int) ((index >>> shift) & MASK);
+            copy[slot] = shift == 0 ? value : assoc((Object[]) copy[slot], shift - BITS, index, value);
+            return copy;
+        }
+
+        public Vector<A> update(int index, A value) {
+            Objects.checkIndex(index, size());
+            return new Vector<>(assoc(root, shift, start + index, value), shift, start, end);
+        }
+
+        public Vector<A> append(A value) {
+            if (end < capacity(shift)) {
+                return new Vector<>(assoc(root, shift, end, value), shift, start, end + 1);
+            }
+            Object[] newRoot = new Object[WIDTH];
+            newRoot[0] = root;
+            return new Vector<>(assoc(newRoot, shift + BITS, end, value), shift + BITS, start, end + 1);
+        }
+
+        public Vector<A> prepend(A value) {
+            if (start > 0) {
+                return new Vector<>(assoc(root, shift, start - 1, value), shift, start - 1, end);
+            }
+            long offset = capacity(shift);
+            Object[] newRoot = new Object[WIDTH];
+            newRoot[1] = root;
+            return new Vector<>(assoc(newRoot, shift + BITS, offset - 1, value), shift + BITS, offset - 1, end + offset);
+        }
+
+        // Shares the trie and descends to the smallest subtree that still spans the requested range
+        public Vector<A> slice(int from, int to) {
+            Objects.checkFromToIndex(from, to, size());
+            if (from == to) return empty();
+            Object[] node = root;
+            int level = shift;
+            long newStart = start + from;
+            long newEnd = start + to;
+            while (level > 0 && ((newStart >>> level) & MASK) == (((newEnd - 1) >>> level) & MASK)) {
+                int slot = (int) ((newStart >>> level) & MASK);
+                long base = (long) slot << level;
+                node = (Object[]) node[slot];
+                newStart -= base;
+                newEnd -= base;
+                level -= BITS;
+            }
+            return new Vector<>(node, level, newStart, newEnd);
+        }
+
+        public Vector<A> take(int n) {
+            return slice(0, Math.max(0, Math.min(n, size())));
+        }
+
+        public Vector<A> drop(int n) {
+            return slice(Math.max(0, Math.min(n, size())), size());
+        }
+
+        @SuppressWarnings("unchecked")
+        public <B> B foldLeft(B value, BiFunction<B, A, B> f) {
+            B accumulator = value;
+            long position = start;
+            while (position < end) {
+                Object[] leaf = leafFor(position);
+                int from = (int) (position & MASK);
+                int to = (int) Math.min(WIDTH, from + end - position);
+                for (int i = from; i < to; i++) {
+                    accumulator = f.apply(accumulator, (A) leaf[i]);
+                }
+                position += to - from;
+            }
+            return accumulator;
+        }
+
+        public <B> B foldMap(Function<A, B> f, Monoid<B> monoid) {
+            return foldLeft(monoid.nil(), (b, a) -> monoid.combine(b, f.apply(a)));
+        }
+
+        public <B> Vector<B> map(Function<A, B> f) {
+            return foldLeft(Vector.<B>builder(), (builder, a) -> builder.add(f.apply(a))).build();
+        }
+
+        public List<A> toList() {
+            Object[] items = new Object[size()];
+            int index = 0;
+            long position = start;
+            while (position < end) {
+                int from = (int) (position & MASK);
+                int length = (int) Math.min(WIDTH - from, end - position);
+                System.arraycopy(leafFor(position), from, items, index, length);
+                index += length;
+                position += length;
+            }
+            return Chunk.view(items, items.length, List.nil());
+        }
+
+        public Stream<A> toStream() {
+            return toStream(0);
+        }
+
+        private Stream<A> toStream(int index) {
+            if (index >= size()) return Stream.empty();
+            return Stream.cons(() -> get(index), () -> toStream(index + 1));
+        }
+
+        @Override
+        public String toString() {
+            StringJoiner joiner = new StringJoiner(", ", "Vector(", ")");
+            foldLeft(joiner, (result, a) -> result.add(String.valueOf(a)));
+            return joiner.toString();
+        }
+
+        // Transient builder for bulk loads: fills trie nodes in place and must not be used after build()
+        public static final class Builder<A> {
+            private Object[] root = new Object[WIDTH];
+            private Object[] leaf = root;
+            private int shift = 0;
+            private long size = 0;
+            private boolean built;
+
+            private Builder() {
+            }
+
+            public Builder<A> add(A value) {
+                if (built) throw new IllegalStateException("Vector.Builder already built");
+                if (size > 0 && (size & MASK) == 0) {
+                    if (size == capacity(shift)) {
+                        Object[] newRoot = new Object[WIDTH];
+                        newRoot[0] = root;
+                        root = newRoot;
+                        shift += BITS;
+                    }
+                    Object[] node = root;
+                    for (int level = shift; level > 0; level -= BITS) {
+                        int slot = (int) ((size >>> level) & MASK);
+                        if (node[slot] == null) node[slot] = new Object[WIDTH];
+                        node = (Object[]) node[slot];
+                    }
+                    leaf = node;
+                }
+                leaf[(int) (size & MASK)] = value;
+                size++;
+                return this;
+            }
+
+            public Vector<A> build() {
+                if (built) throw new IllegalStateException("Vector.Builder already built");
+                built = true;
+                return new Vector<>(root, shift, 0, size);
+            }
+        }
+    }
+
+    // Persistent hash map (hash array mapped trie with CHAMP node layout)
+    public static final class HashTrieMap<K, V> {
+        private static final int BITS = 5;
+        private static final int MASK = (1 << BITS) - 1;
+        private static final Object NOT_FOUND = new Object();
+        private static final HashTrieMap<?, ?> EMPTY = new HashTrieMap<>(new BitmapNode<>(null, 0, 0, new Object[0]), 0);
+
+        private final TrieNode<K, V> root;
+        private final int size;
+
+        private HashTrieMap(TrieNode<K, V> root, int size) {
+            this.root = root;
+            this.size = size;
+        }
+
+        @SuppressWarnings("unchecked")
+        public static <K, V> HashTrieMap<K, V> empty() {
+            return (HashTrieMap<K, V>) EMPTY;
+        }
+
+        public static <K, V> HashTrieMap<K, V> fromList(List<Pair<K, V>> entries) {
+            Transient<K, V> result = HashTrieMap.<K, V>empty().asTransient();
+            for (Pair<K, V> entry : entries) {
+                result.put(entry.first(), entry.second());
+            }
+            return result.persistent();
+        }
+
+        private static int hash(Object key) {
+            int hash = Objects.hashCode(key);
+            return hash ^ (hash >>> 16);
+        }
+
+        private static int bit(int hash, int shift) {
+            return 1 << ((hash >>> shift) & MASK);
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public boolean isEmpty() {
+            return size == 0;
+        }
+
+        @SuppressWarnings("unchecked")
+        public Option<V> get(K key) {
+            Object value = root.find(key, hash(key), 0);
+            return value == NOT_FOUND ? Option.none() : Option.some((V) value);
+        }
+
+        public boolean containsKey(K key) {
+            return root.find(key, hash(key), 0) != NOT_FOUND;
+        }
+
+        public HashTrieMap<K, V> put(K key, V value) {
+            Change change = new Change();
+            TrieNode<K, V> newRoot = root.put(null, key, value, hash(key), 0, change);
+            return newRoot == root ? this : new HashTrieMap<>(newRoot, size + change.sizeDelta);
+        }
+
+        public HashTrieMap<K, V> remove(K key) {
+            Change change = new Change();
+            TrieNode<K, V> newRoot = root.remove(null, key, hash(key), 0, change);
+            return newRoot == root ? this : new HashTrieMap<>(newRoot, size + change.sizeDelta);
+        }
+
+        // Same contract as java.util.Map.merge: a null result from f removes the key
+        public HashTrieMap<K, V> merge(K key, V value, BiFunction<V, V, V> f) {
+            V merged = get(key).map(existing -> f.apply(existing, value)).getOrElse(() -> value);
+            return merged == null ? remove(key) : put(key, merged);
+        }
+
+        public Transient<K, V> asTransient() {
+            return new Transient<>(root, size);
+        }
+
+        public void forEach(BiConsumer<K, V> action) {
+            root.forEach(action);
+        }
+
+        public <B> B foldMap(BiFunction<K, V, B> f, Monoid<B> monoid) {
+            return root.foldMap(monoid.nil(), f, monoid);
+        }
+
+        public List<Pair<K, V>> toList() {
+            ListBuilder<Pair<K, V>> builder = new ListBuilder<>();
+            forEach((key, value) -> builder.add(new Pair<>(key, value)));
+            return builder.build();
+        }
+
+        @Override
+        public String toString() {
+            StringJoiner joiner = new StringJoiner(", ", "HashTrieMap(", ")");
+            forEach((key, value) -> joiner.add(key + " -> " + value));
+            return joiner.toString();
+        }
+
+        // Batch update mode: nodes stamped with this transient's edit token are mutated in place
+        public static final class Transient<K, V> {
+            private Object edit = new Object();
+            private TrieNode<K, V> root;
+            private int size;
+
+            private Transient(TrieNode<K, V> root, int size) {
+                this.root = root;
+                this.size = size;
+            }
+
+            private Object edit() {
+                if (edit == null) throw new IllegalStateException("Transient used after persistent()");
+                return edit;
+            }
+
+            public Transient<K, V> put(K key, V value) {
+                Change change = new Change();
+                root = root.put(edit(), key, value, hash(key), 0, change);
+                size += change.sizeDelta;
+                return this;
+            }
+
+            public Transient<K, V> remove(K key) {
+                Change change = new Change();
+                root = root.remove(edit(), key, hash(key), 0, change);
+                size += change.sizeDelta;
+                return this;
+            }
+
+            @SuppressWarnings("unchecked")
+            public Transient<K, V> merge(K key, V value, BiFunction<V, V, V> f) {
+                Object existing = root.find(key, hash(key), 0);
+                V merged = existing == NOT_FOUND ? value : f.apply((V) existing, value);
+                return merged == null ? remove(key) : put(key, merged);
+            }
+
+            public HashTrieMap<K, V> persistent() {
+                edit();
+                edit = null;
+                return new HashTrieMap<>(root, size);
+            }
+        }
+
+        private static final class Change {
+            private int sizeDelta;
+        }
+
+        private sealed interface TrieNode<K, V> permits BitmapNode, CollisionNode {
+            Object find(Object key, int hash, int shift);
+
+            TrieNode<K, V> put(Object edit, K key, V value, int hash, int shift, Change change);
+
+            TrieNode<K, V> remove(Object edit, Object key, int hash, int shift, Change change);
+
+            boolean hasSingleEntry();
+
+            K keyAt(int index);
+
+            V valueAt(int index);
+
+            void forEach(BiConsumer<K, V> action);
+
+            <B> B foldMap(B value, BiFunction<K, V, B> f, Monoid<B> monoid);
+        }
+
+        // Entries occupy content[2 * i, 2 * i + 1] from the front, sub-nodes are stored from the back
+        private static final class BitmapNode<K, V> implements TrieNode<K, V> {
+            private Object edit;
+            private int dataMap;
+            private int nodeMap;
+            private Object[] content;
+
+            private BitmapNode(Object edit, int dataMap, int nodeMap, Object[] content) {
+                this.edit = edit;
+                this.dataMap = dataMap;
+                this.nodeMap = nodeMap;
+                this.content = content;
+            }
+
+            private int dataIndex(int bit) {
+                return Integer.bitCount(dataMap & (bit - 1));
+            }
+
+            private int nodeIndex(int bit) {
+                return content.length - 1 - Integer.bitCount(nodeMap & (bit - 1));
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public K keyAt(int index) {
+                return (K) content[2 * index];
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public V valueAt(int index) {
+                return (V) content[2 * index + 1];
+            }
+
+            @SuppressWarnings("unchecked")
+            private TrieNode<K, V> nodeAt(int bit) {
+                return (TrieNode<K, V>) content[nodeIndex(bit)];
+            }
+
+            @Override
+            public boolean hasSingleEntry() {
+                return nodeMap == 0 && Integer.bitCount(dataMap) == 1;
+            }
+
+            private BitmapNode<K, V> with(Object edit, int dataMap, int nodeMap, Object[] content) {
+                if (edit == null || this.edit != edit) return new BitmapNode<>(edit, dataMap, nodeMap, content);
+                this.dataMap = dataMap;
+                this.nodeMap = nodeMap;
+                this.content = content;
+                return this;
+            }
+
+            private BitmapNode<K, V> withSlot(Object edit, int index, Object value) {
+                Object[] newContent = edit != null && this.edit == edit ? content : content.clone();
+                newContent[index] = value;
+                return with(edit, dataMap, nodeMap, newContent);
+            }
+
+            @Override
+            public Object find(Object key, int hash, int shift) {
+                int bit = bit(hash, shift);
+                if ((dataMap & bit) != 0) {
+                    int index = dataIndex(bit);
+                    return Objects.equals(keyAt(index), key) ? valueAt(index) : NOT_FOUND;
+                }
+                if ((nodeMap & bit) != 0) return nodeAt(bit).find(key, hash, shift + BITS);
+                return NOT_FOUND;
+            }
+
+            @Override
+            public TrieNode<K, V> put(Object edit, K key, V value, int hash, int shift, Change change) {
+                int bit = bit(hash, shift);
+                if ((dataMap & bit) != 0) {
+                    int index = dataIndex(bit);
+                    K existingKey = keyAt(index);
+                    if (Objects.equals(existingKey, key)) {
+                        return valueAt(index) == value ? this : withSlot(edit, 2 * index + 1, value);
+                    }
+                    TrieNode<K, V> node = mergeEntries(edit, existingKey, valueAt(index), hash(existingKey), key, value, hash, shift + BITS);
+                    change.sizeDelta = 1;
+                    return migrateToNode(edit, bit, index, node);
+                }
+                if ((nodeMap & bit) != 0) {
+                    TrieNode<K, V> node = nodeAt(bit);
+                    TrieNode<K, V> newNode = node.put(edit, key, value, hash, shift + BITS, change);
+                    return newNode == node ? this : withSlot(edit, nodeIndex(bit), newNode);
+                }
+                change.sizeDelta = 1;
+                int index = dataIndex(bit);
+                Object[] newContent = new Object[content.length + 2];
+                System.arraycopy(content, 0, newContent, 0, 2 * index);
+                newContent[2 * index] = key;
+                newContent[2 * index + 1] = value;
+                System.arraycopy(content, 2 * index, newContent, 2 * index + 2, content.length - 2 * index);
+                return with(edit, dataMap | bit, nodeMap, newContent);
+            }
+
+            @Override
+            public TrieNode<K, V> remove(Object edit, Object key, int hash, int shift, Change change) {
+                int bit = bit(hash, shift);
+                if ((dataMap & bit) != 0) {
+                    int index = dataIndex(bit);
+                    if (!Objects.equals(keyAt(index), key)) return this;
+                    change.sizeDelta = -1;
+                    Object[] newContent = new Object[content.length - 2];
+                    System.arraycopy(content, 0, newContent, 0, 2 * index);
+                    System.arraycopy(content, 2 * index + 2, newContent, 2 * index, content.length - 2 * index - 2);
+                    return with(edit, dataMap ^ bit, nodeMap, newContent);
+                }
+                if ((nodeMap & bit) != 0) {
+                    TrieNode<K, V> node = nodeAt(bit);
+                    TrieNode<K, V> newNode = node.remove(edit, key, hash, shift + BITS, change);
+                    if (newNode == node) return this;
+                    return newNode.hasSingleEntry() ? migrateToInline(edit, bit, newNode) : withSlot(edit, nodeIndex(bit), newNode);
+                }
+                return this;
+            }
+
+            private TrieNode<K, V> migrateToNode(Object edit, int bit, int dataIndex, TrieNode<K, V> node) {
+                int nodePosition = nodeIndex(bit) - 1;
+                Object[] newContent = new Object[content.length - 1];
+                System.arraycopy(content, 0, newContent, 0, 2 * dataIndex);
+                System.arraycopy(content, 2 * dataIndex + 2, newContent, 2 * dataIndex, nodePosition - 2 * dataIndex);
+                newContent[nodePosition] = node;
+                System.arraycopy(content, nodePosition + 2, newContent, nodePosition + 1, content.length - nodePosition - 2);
+                return with(edit, dataMap ^ bit, nodeMap | bit, newContent);
+            }
+
+            private TrieNode<K, V> migrateToInline(Object edit, int bit, TrieNode<K, V> node) {
+                int nodePosition = nodeIndex(bit);
+                int dataIndex = dataIndex(bit);
+                Object[] newContent = new Object[content.length + 1];
+                System.arraycopy(content, 0, newContent, 0, 2 * dataIndex);
+                newContent[2 * dataIndex] = node.keyAt(0);
+                newContent[2 * dataIndex + 1] = node.valueAt(0);
+                System.arraycopy(content, 2 * dataIndex, newContent, 2 * dataIndex + 2, nodePosition - 2 * dataIndex);
+                System.arraycopy(content, nodePosition + 1, newContent, nodePosition + 2, content.length - nodePosition - 1);
+                return with(edit, dataMap | bit, nodeMap ^ bit, newContent);
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public void forEach(BiConsumer<K, V> action) {
+                int dataCount = Integer.bitCount(dataMap);
+                for (int i = 0; i < dataCount; i++) {
+                    action.accept(keyAt(i), valueAt(i));
+                }
+                for (int i = content.length - 1; i >= 2 * dataCount; i--) {
+                    ((TrieNode<K, V>) content[i]).forEach(action);
+                }
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public <B> B foldMap(B value, BiFunction<K, V, B> f, Monoid<B> monoid) {
+                B accumulator = value;
+                int dataCount = Integer.bitCount(dataMap);
+                for (int i = 0; i < dataCount; i++) {
+                    accumulator = monoid.combine(accumulator, f.apply(keyAt(i), valueAt(i)));
+                }
+                for (int i = content.length - 1; i >= 2 * dataCount; i--) {
+                    accumulator = ((TrieNode<K, V>) content[i]).foldMap(accumulator, f, monoid);
+                }
+                return accumulator;
+            }
+        }
+
+        private static <K, V> TrieNode<K, V> mergeEntries(Object edit, K key1, V value1, int hash1, K key2, V value2, int hash2, int shift) {
+            if (hash1 == hash2) return new CollisionNode<>(hash1, new Object[]{key1, value1, key2, value2});
+            int bit1 = bit(hash1, shift);
+            int bit2 = bit(hash2, shift);
+            if (bit1 != bit2) {
+                Object[] content = Integer.compareUnsigned(bit1, bit2) < 0 ? new Object[]{key1, value1, key2, value2} : new Object[]{key2, value2, key1, value1};
+                return new BitmapNode<>(edit, bit1 | bit2, 0, content);
+            }
+            return new BitmapNode<>(edit, 0, bit1, new Object[]{mergeEntries(edit, key1, value1, hash1, key2, value2, hash2, shift + BITS)});
+        }
+
+        // Keys whose full hashes are equal, kept as a flat array of key/value pairs
+        private record CollisionNode<K, V>(int hash, Object[] content) implements TrieNode<K, V> {
+            private int indexOf(Object key) {
+                for (int i = 0; i < content.length; i += 2) {
+                    if (Objects.equals(content[i], key)) return i;
+                }
+                return -1;
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public K keyAt(int index) {
+                return (K) content[2 * index];
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public V valueAt(int index) {
+                return (V) content[2 * index + 1];
+            }
+
+            @Override
+            public boolean hasSingleEntry() {
+                return content.length == 2;
+            }
+
+            @Override
+            public Object find(Object key, int hash, int shift) {
+                int index = hash == this.hash ? indexOf(key) : -1;
+                return index < 0 ? NOT_FOUND : content[index + 1];
+            }
+
+            @Override
+            public TrieNode<K, V> put(Object edit, K key, V value, int hash, int shift, Change change) {
+                if (hash != this.hash) {
+                    int bit = bit(this.hash, shift);
+                    TrieNode<K, V> node = new BitmapNode<K, V>(edit, 0, bit, new Object[]{this});
+                    return node.put(edit, key, value, hash, shift, change);
+                }
+                int index = indexOf(key);
+                if (index >= 0) {
+                    if (content[index + 1] == value) return this;
+                    Object[] newContent = content.clone();
+                    newContent[index + 1] = value;
+                    return new CollisionNode<>(hash, newContent);
+                }
+                change.sizeDelta = 1;
+                Object[] newContent = Arrays.copyOf(content, content.length + 2);
+                newContent[content.length] = key;
+                newContent[content.length + 1] = value;
+                return new CollisionNode<>(hash, newContent);
+            }
+
+            @Override
+            public TrieNode<K, V> remove(Object edit, Object key, int hash, int shift, Change change) {
+                int index = hash == this.hash ? indexOf(key) : -1;
+                if (index < 0) return this;
+                change.sizeDelta = -1;
+                Object[] newContent = new Object[content.length - 2];
+                System.arraycopy(content, 0, newContent, 0, index);
+                System.arraycopy(content, index + 2, newContent, index, content.length - index - 2);
+                return new CollisionNode<>(hash, newContent);
+            }
+
+            @Override
+            public void forEach(BiConsumer<K, V> action) {
+                for (int i = 0; i < content.length / 2; i++) {
+                    action.accept(keyAt(i), valueAt(i));
+                }
+            }
+
+            @Override
+            public <B> B foldMap(B value, BiFunction<K, V, B> f, Monoid<B> monoid) {
+                B accumulator = value;
+                for (int i = 0; i < content.length / 2; i++) {
+                    accumulator = monoid.combine(accumulator, f.apply(keyAt(i), valueAt(i)));
+                }
+                return accumulator;
+            }
+        }
+    }
+
+    // Persistent sorted map and set (red-black tree; Okasaki insertion, Kahrs deletion)
+    public static final class OrderedMap<K, V> {
+        private final Comparator<? super K> comparator;
+        private final Node<K, V> root;
+        private final int size;
+
+        private OrderedMap(Comparator<? super K> comparator, Node<K, V> root, int size) {
+            this.comparator = comparator;
+            this.root = root;
+            this.size = size;
+        }
+
+        public static <K extends Comparable<? super K>, V> OrderedMap<K, V> empty() {
+            return empty(Comparator.naturalOrder());
+        }
+
+        public static <K, V> OrderedMap<K, V> empty(Comparator<? super K> comparator) {
+            return new OrderedMap<>(comparator, null, 0);
+        }
+
+        public static <K extends Comparable<? super K>, V> OrderedMap<K, V> fromSortedList(List<Pair<K, V>> entries) {
+            return fromSortedList(entries, Comparator.naturalOrder());
+        }
+
+        // Builds a balanced tree in O(n); only the incomplete deepest level is red
+        @SuppressWarnings("unchecked")
+        public static <K, V> OrderedMap<K, V> fromSortedList(List<Pair<K, V>> entries, Comparator<? super K> comparator) {
+            Object[] items = toArray(entries);
+            for (int i = 1; i < items.length; i++) {
+                if (comparator.compare(((Pair<K, V>) items[i - 1]).first(), ((Pair<K, V>) items[i]).first()) >= 0) {
+                    throw new IllegalArgumentException("Keys must be strictly increasing");
+                }
+            }
+            int redLevel = 32 - Integer.numberOfLeadingZeros(items.length);
+            return new OrderedMap<>(comparator, blacken(build(items, 0, items.length, 1, redLevel)), items.length);
+        }
+
+        @SuppressWarnings("unchecked")
+        private static <K, V> Node<K, V> build(Object[] items, int from, int to, int level, int redLevel) {
+            if (from >= to) return null;
+            int middle = (from + to) >>> 1;
+            Pair<K, V> entry = (Pair<K, V>) items[middle];
+            return new Node<>(level == redLevel, build(items, from, middle, level + 1, redLevel), entry.first(), entry.second(),
+                    build(items, middle + 1, to, level + 1, redLevel));
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public boolean isEmpty() {
+            return size == 0;
+        }
+
+        private Node<K, V> lookup(K key) {
+            Node<K, V> node = root;
+            while (node != null) {
+                int result = comparator.compare(key, node.key());
+                if (result == 0) return node;
+                node = result < 0 ? node.left() : node.right();
+            }
+            return null;
+        }
+
+        public Option<V> get(K key) {
+            Node<K, V> node = lookup(key);
+            return node == null ? Option.none() : Option.some(node.value());
+        }
+
+        public boolean containsKey(K key) {
+            return lookup(key) != null;
+        }
+
+        public OrderedMap<K, V> put(K key, V value) {
+            int newSize = containsKey(key) ? size : size + 1;
+            return new OrderedMap<>(comparator, blacken(insert(root, key, value)), newSize);
+        }
+
+        public OrderedMap<K, V> remove(K key) {
+            if (!containsKey(key)) return this;
+            return new OrderedMap<>(comparator, blacken(delete(root, key)), size - 1);
+        }
+
+        // Greatest entry with a key less than or equal to the given one
+        public Option<Pair<K, V>> floor(K key) {
+            Node<K, V> node = root;
+            Node<K, V> candidate = null;
+            while (node != null) {
+                int result = comparator.compare(key, node.key());
+                if (result == 0) return Option.some(node.entry());
+                if (result < 0) {
+                    node = node.left();
+                } else {
+                    candidate = node;
+                    node = node.right();
+                }
+            }
+            return candidate == null ? Option.none() : Option.some(candidate.entry());
+        }
+
+        // Least entry with a key greater than or equal to the given one
+        public Option<Pair<K, V>> ceiling(K key) {
+            Node<K, V> node = root;
+            Node<K, V> candidate = null;
+            while (node != null) {
+                int result = comparator.compare(key, node.key());
+                if (result == 0) return Option.some(node.entry());
+                if (result > 0) {
+                    node = node.right();
+                } else {
+                    candidate = node;
+                    node = node.left();
+                }
+            }
+            return candidate == null ? Option.none() : Option.some(candidate.entry());
+        }
+
+        public Option<Pair<K, V>> min() {
+            if (root == null) return Option.none();
+            Node<K, V> node = root;
+            while (node.left() != null) node = node.left();
+            return Option.some(node.entry());
+        }
+
+        public Option<Pair<K, V>> max() {
+            if (root == null) return Option.none();
+            Node<K, V> node = root;
+            while (node.right() != null) node = node.right();
+            return Option.some(node.entry());
+        }
+
+        // Entries with from <= key < to, in key order; subtrees outside the range are skipped
+        public List<Pair<K, V>> range(K from, K to) {
+            ListBuilder<Pair<K, V>> builder = new ListBuilder<>();
+            range(root, from, to, builder);
+            return builder.build();
+        }
+
+        private void range(Node<K, V> node, K from, K to, ListBuilder<Pair<K, V>> builder) {
+            if (node == null) return;
+            boolean afterFrom = comparator.compare(node.key(), from) >= 0;
+            boolean beforeTo = comparator.compare(node.key(), to) < 0;
+            if (afterFrom) range(node.left(), from, to, builder);
+            if (afterFrom && beforeTo) builder.add(node.entry());
+            if (beforeTo) range(node.right(), from, to, builder);
+        }
+
+        public void forEach(BiConsumer<K, V> action) {
+            forEach(root, action);
+        }
+
+        private static <K, V> void forEach(Node<K, V> node, BiConsumer<K, V> action) {
+            if (node == null) return;
+            forEach(node.left(), action);
+            action.accept(node.key(), node.value());
+            forEach(node.right(), action);
+        }
+
+        public List<Pair<K, V>> toList() {
+            ListBuilder<Pair<K, V>> builder = new ListBuilder<>();
+            forEach((key, value) -> builder.add(new Pair<>(key, value)));
+            return builder.build();
+        }
+
+        public List<K> keys() {
+            ListBuilder<K> builder = new ListBuilder<>();
+            forEach((key, value) -> builder.add(key));
+            return builder.build();
+        }
+
+        @Override
+        public String toString() {
+            StringJoiner joiner = new StringJoiner(", ", "OrderedMap(", ")");
+            forEach((key, value) -> joiner.add(key + " -> " + value));
+            return joiner.toString();
+        }
+
+        // A null child is an empty (black) leaf; recursion depth is bounded by twice the black height
+        private record Node<K, V>(boolean red, Node<K, V> left, K key, V value, Node<K, V> right) {
+            Pair<K, V> entry() {
+                return new Pair<>(key, value);
+            }
+
+            Node<K, V> withColor(boolean red) {
+                return this.red == red ? this : new Node<>(red, left, key, value, right);
+            }
+        }
+
+        private static boolean isRed(Node<?, ?> node) {
+            return node != null && node.red();
+        }
+
+        private static boolean isBlack(Node<?, ?> node) {
+            return node != null && !node.red();
+        }
+
+        private static <K, V> Node<K, V> blacken(Node<K, V> node) {
+            return node == null ? null : node.withColor(false);
+        }
+
+        private static <K, V> Node<K, V> red(Node<K, V> left, Node<K, V> node, Node<K, V> right) {
+            return new Node<>(true, left, node.key(), node.value(), right);
+        }
+
+        private static <K, V> Node<K, V> black(Node<K, V> left, Node<K, V> node, Node<K, V> right) {
+            return new Node<>(false, left, node.key(), node.value(), right);
+        }
+
+        private Node<K, V> insert(Node<K, V> node, K key, V value) {
+            if (node == null) return new Node<>(true, null, key, value, null);
+            int result = comparator.compare(key, node.key());
+            if (result == 0) return new Node<>(node.red(), node.left(), key, value, node.right());
+            if (node.red()) {
+                return result < 0 ? red(insert(node.left(), key, value), node, node.right())
+                        : red(node.left(), node, insert(node.right(), key, value));
+            }
+            return result < 0 ? balance(insert(node.left(), key, value), node, node.right())
+                    : balance(node.left(), node, insert(node.right(), key, value));
+        }
+
+        // Rebuilds a black node whose children may contain a red-red violation
+        private static <K, V> Node<K, V> balance(Node<K, V> left, Node<K, V> node, Node<K, V> right) {
+            if (isRed(left) && isRed(right)) {
+                return red(left.withColor(false), node, right.withColor(false));
+            }
+            if (isRed(left) && isRed(left.left())) {
+                return red(left.left().withColor(false), left, black(left.right(), node, right));
+            }
+            if (isRed(left) && isRed(left.right())) {
+                Node<K, V> middle = left.right();
+                return red(black(left.left(), left, middle.left()), middle, black(middle.right(), node, right));
+            }
+            if (isRed(right) && isRed(right.right())) {
+                return red(black(left, node, right.left()), right, right.right().withColor(false));
+            }
+            if (isRed(right) && isRed(right.left())) {
+                Node<K, V> middle = right.left();
+                return red(black(left, node, middle.left()), middle, black(middle.right(), right, right.right()));
+            }
+            return black(left, node, right);
+        }
+
+        private Node<K, V> delete(Node<K, V> node, K key) {
+            if (node == null) return null;
+            int result = comparator.compare(key, node.key());
+            if (result < 0) {
+                return isBlack(node.left()) ? balanceLeft(delete(node.left(), key), node, node.right())
+                        : red(delete(node.left(), key), node, node.right());
+            }
+            if (result > 0) {
+                return isBlack(node.right()) ? balanceRight(node.left(), node, delete(node.right(), key))
+                        : red(node.left(), node, delete(node.right(), key));
+            }
+            return fuse(node.left(), node.right());
+        }
+
+        // Restores the invariants after the left subtree lost one level of black height
+        private static <K, V> Node<K, V> balanceLeft(Node<K, V> left, Node<K, V> node, Node<K, V> right) {
+            if (isRed(left)) return red(left.withColor(false), node, right);
+            if (isBlack(right)) return balance(left, node, right.withColor(true));
+            if (isRed(right) && isBlack(right.left())) {
+                Node<K, V> middle = right.left();
+                return red(black(left, node, middle.left()), middle,
+                        balance(middle.right(), right, right.right().withColor(true)));
+            }
+            throw new IllegalStateException("Red-black invariant violated");
+        }
+
+        private static <K, V> Node<K, V> balanceRight(Node<K, V> left, Node<K, V> node, Node<K, V> right) {
+            if (isRed(right)) return red(left, node, right.withColor(false));
+            if (isBlack(left)) return balance(left.withColor(true), node, right);
+            if (isRed(left) && isBlack(left.right())) {
+                Node<K, V> middle = left.right();
+                return red(balance(left.left().withColor(true), left, middle.left()), middle,
+                        black(middle.right(), node, right));
+            }
+            throw new IllegalStateException("Red-black invariant violated");
+        }
+
+        // Joins the two subtrees of a removed node, which have equal black height
+        private static <K, V> Node<K, V> fuse(Node<K, V> left, Node<K, V> right) {
+            if (left == null) return right;
+            if (right == null) return left;
+            if (isRed(left) && isRed(right)) {
+                Node<K, V> middle = fuse(left.right(), right.left());
+                if (isRed(middle)) {
+                    return red(red(left.left(), left, middle.left()), middle, red(middle.right(), right, right.right()));
+                }
+                return red(left.left(), left, red(middle, right, right.right()));
+            }
+            if (isBlack(left) && isBlack(right)) {
+                Node<K, V> middle = fuse(left.right(), right.left());
+                if (isRed(middle)) {
+                    return red(black(left.left(), left, middle.left()), middle, black(middle.right(), right, right.right()));
+                }
+                return balanceLeft(left.left(), left, black(middle, right, right.right()));
+            }
+            if (isRed(right)) return red(fuse(left, right.left()), right, right.right());
+            return red(left.left(), left, fuse(left.right(), right));
+        }
+    }
+
+    public static final class OrderedSet<A> {
+        private final OrderedMap<A, Boolean> map;
+
+        private OrderedSet(OrderedMap<A, Boolean> map) {
+            this.map = map;
+        }
+
+        public static <A extends Comparable<? super A>> OrderedSet<A> empty() {
+            return empty(Comparator.naturalOrder());
+        }
+
+        public static <A> OrderedSet<A> empty(Comparator<? super A> comparator) {
+            return new OrderedSet<>(OrderedMap.empty(comparator));
+        }
+
+        public static <A extends Comparable<? super A>> OrderedSet<A> fromSortedList(List<A> xs) {
+            return fromSortedList(xs, Comparator.naturalOrder());
+        }
+
+        public static <A> OrderedSet<A> fromSortedList(List<A> xs, Comparator<? super A> comparator) {
+            return new OrderedSet<>(OrderedMap.fromSortedList(FunctionalProgramming.map(xs, x -> new Pair<>(x, true)), comparator));
+        }
+
+        public int size() {
+            return map.size();
+        }
+
+        public boolean isEmpty() {
+            return map.isEmpty();
+        }
+
+        public boolean contains(A value) {
+            return map.containsKey(value);
+        }
+
+        public OrderedSet<A> add(A value) {
+            return contains(value) ? this : new OrderedSet<>(map.put(value, true));
+        }
+
+        public OrderedSet<A> remove(A value) {
+            OrderedMap<A, Boolean> newMap = map.remove(value);
+            return newMap == map ? this : new OrderedSet<>(newMap);
+        }
+
+        public Option<A> floor(A value) {
+            return map.floor(value).map(Pair::first);
+        }
+
+        public Option<A> ceiling(A value) {
+            return map.ceiling(value).map(Pair::first);
+        }
+
+        public Option<A> min() {
+            return map.min().map(Pair::first);
+        }
+
+        public Option<A> max() {
+            return map.max().map(Pair::first);
+        }
+
+        public List<A> range(A from, A to) {
+            return FunctionalProgramming.map(map.range(from, to), Pair::first);
+        }
+
+        public void forEach(Consumer<A> action) {
+            map.forEach((value, present) -> action.accept(value));
+        }
+
+        public List<A> toList() {
+            return map.keys();
+        }
+
+        @Override
+        public String toString() {
+            StringJoiner joiner = new StringJoiner(", ", "OrderedSet(", ")");
+            forEach(value -> joiner.add(String.valueOf(value)));
+            return joiner.toString();
+        }
+    }
+
+    // Finger tree (Hinze-Paterson 2-3 finger tree; every subtree caches its measure under the given Monoid)
+    // Nodes are untyped: elements at depth 0 are values of A and deeper levels hold Nodes, so measures are looked up by depth
+    public static final class FingerTree<V, A> {
+        private final Monoid<V> monoid;
+        private final Function<? super A, ? extends V> measure;
+        private final Spine root;
+
+        private FingerTree(Monoid<V> monoid, Function<? super A, ? extends V> measure, Spine root) {
+            this.monoid = monoid;
+            this.measure = measure;
+            this.root = root;
+        }
+
+        private sealed interface Spine permits Empty, Single, Deep {}
+
+        private record Empty() implements Spine {
+            private static final Empty INSTANCE = new Empty();
+        }
+
+        private record Single(Object value) implements Spine {}
+
+        // Digits hold one to four elements
+        private record Deep(Object measure, Object[] prefix, Spine middle, Object[] suffix) implements Spine {}
+
+        // Holds two or three elements
+        private record Node(Object measure, Object[] items) {}
+
+        private record Split(Spine left, Object value, Spine right) {}
+
+        public static <V, A> FingerTree<V, A> empty(Monoid<V> monoid, Function<? super A, ? extends V> measure) {
+            return new FingerTree<>(monoid, measure, Empty.INSTANCE);
+        }
+
+        public static <V, A> FingerTree<V, A> fromList(List<A> xs, Monoid<V> monoid, Function<? super A, ? extends V> measure) {
+            return FunctionalProgramming.foldLeft(xs, FingerTree.<V, A>empty(monoid, measure), FingerTree::append);
+        }
+
+        private static final Monoid<Integer> SIZE = new Monoid<>() {
+            @Override
+            public Integer combine(Integer a1, Integer a2) {
+                return a1 + a2;
+            }
+
+            @Override
+            public Integer nil() {
+                return 0;
+            }
         };
+
+        // Indexed sequence: every element measures 1, so the measure of a prefix is its length
+        public static <A> FingerTree<Integer, A> indexed() {
+            return empty(SIZE, value -> 1);
+        }
+
+        public static <A> FingerTree<Integer, A> indexed(List<A> xs) {
+            return fromList(xs, SIZE, value -> 1);
+        }
+
+        private FingerTree<V, A> with(Spine spine) {
+            return spine == root ? this : new FingerTree<>(monoid, measure, spine);
+        }
+
+        public boolean isEmpty() {
+            return root instanceof Empty;
+        }
+
+        public V measure() {
+            return measure(root, 0);
+        }
+
+        @SuppressWarnings("unchecked")
+        private V measure(Object value, int depth) {
+            return depth == 0 ? measure.apply((A) value) : (V) ((Node) value).measure();
+        }
+
+        @SuppressWarnings("unchecked")
+        private V measure(Spine spine, int depth) {
+            return switch (spine) {
+                case Empty empty -> monoid.nil();
+                case Single single -> measure(single.value(), depth);
+                case Deep deep -> (V) deep.measure();
+            };
+        }
+
+        private V measure(Object[] digit, int from, int to, int depth) {
+            V result = monoid.nil();
+            for (int i = from; i < to; i++) {
+                result = monoid.combine(result, measure(digit[i], depth));
+            }
+            return result;
+        }
+
+        private V measure(Object[] digit, int depth) {
+            return measure(digit, 0, digit.length, depth);
+        }
+
+        private Deep deep(Object[] prefix, Spine middle, Object[] suffix, int depth) {
+            V value = monoid.combine(monoid.combine(measure(prefix, depth), measure(middle, depth + 1)), measure(suffix, depth));
+            return new Deep(value, prefix, middle, suffix);
+        }
+
+        private Node node(Object[] items, int depth) {
+            return new Node(measure(items, depth), items);
+        }
+
+        public FingerTree<V, A> prepend(A value) {
+            return with(prepend(value, root, 0));
+        }
+
+        public FingerTree<V, A> append(A value) {
+            return with(append(root, value, 0));
+        }
+
+        private Spine prepend(Object value, Spine spine, int depth) {
+            return switch (spine) {
+                case Empty empty -> new Single(value);
+                case Single single -> deep(new Object[]{value}, Empty.INSTANCE, new Object[]{single.value()}, depth);
+                case Deep deep -> {
+                    Object[] prefix = deep.prefix();
+                    V total = monoid.combine(measure(value, depth), measure(deep, depth));
+                    if (prefix.length < 4) {
+                        Object[] digit = new Object[prefix.length + 1];
+                        digit[0] = value;
+                        System.arraycopy(prefix, 0, digit, 1, prefix.length);
+                        yield new Deep(total, digit, deep.middle(), deep.suffix());
+                    }
+                    Node node = node(new Object[]{prefix[1], prefix[2], prefix[3]}, depth);
+                    yield new Deep(total, new Object[]{value, prefix[0]}, prepend(node, deep.middle(), depth + 1), deep.suffix());
+                }
+            };
+        }
+
+        private Spine append(Spine spine, Object value, int depth) {
+            return switch (spine) {
+                case Empty empty -> new Single(value);
+                case Single single -> deep(new Object[]{single.value()}, Empty.INSTANCE, new Object[]{value}, depth);
+                case Deep deep -> {
+                    Object[] suffix = deep.suffix();
+                    V total = monoid.combine(measure(deep, depth), measure(value, depth));
+                    if (suffix.length < 4) {
+                        Object[] digit = Arrays.copyOf(suffix, suffix.length + 1);
+                        digit[suffix.length] = value;
+                        yield new Deep(total, deep.prefix(), deep.middle(), digit);
+                    }
+                    Node node = node(new Object[]{suffix[0], suffix[1], suffix[2]}, depth);
+                    yield new Deep(total, deep.prefix(), append(deep.middle(), node, depth + 1), new Object[]{suffix[3], value});
+                }
+            };
+        }
+
+        private Spine fromDigit(Object[] digit, int depth) {
+            Spine spine = Empty.INSTANCE;
+            for (Object value : digit) {
+                spine = append(spine, value, depth);
+            }
+            return spine;
+        }
+
+        @SuppressWarnings("unchecked")
+        public A head() {
+            return switch (root) {
+                case Empty empty -> throw new NoSuchElementException("FingerTree.head");
+                case Single single -> (A) single.value();
+                case Deep deep -> (A) deep.prefix()[0];
+            };
+        }
+
+        @SuppressWarnings("unchecked")
+        public A last() {
+            return switch (root) {
+                case Empty empty -> throw new NoSuchElementException("FingerTree.last");
+                case Single single -> (A) single.value();
+                case Deep deep -> (A) deep.suffix()[deep.suffix().length - 1];
+            };
+        }
+
+        public FingerTree<V, A> tail() {
+            if (isEmpty()) throw new NoSuchElementException("FingerTree.tail");
+            return with(tail(root, 0));
+        }
+
+        public FingerTree<V, A> init() {
+            if (isEmpty()) throw new NoSuchElementException("FingerTree.init");
+            return with(init(root, 0));
+        }
+
+        private Spine tail(Spine spine, int depth) {
+            return switch (spine) {
+                case Empty empty -> empty;
+                case Single single -> Empty.INSTANCE;
+                case Deep deep -> deepLeft(Arrays.copyOfRange(deep.prefix(), 1, deep.prefix().length), deep.middle(), deep.suffix(), depth);
+            };
+        }
+
+        private Spine init(Spine spine, int depth) {
+            return switch (spine) {
+                case Empty empty -> empty;
+                case Single single -> Empty.INSTANCE;
+                case Deep deep -> deepRight(deep.prefix(), deep.middle(), Arrays.copyOf(deep.suffix(), deep.suffix().length - 1), depth);
+            };
+        }
+
+        // Rebuilds a Deep whose prefix may be empty by borrowing the first node of the middle tree
+        private Spine deepLeft(Object[] prefix, Spine middle, Object[] suffix, int depth) {
+            if (prefix.length > 0) return deep(prefix, middle, suffix, depth);
+            return switch (middle) {
+                case Empty empty -> fromDigit(suffix, depth);
+                case Single single -> deep(((Node) single.value()).items(), Empty.INSTANCE, suffix, depth);
+                case Deep deep -> deep(((Node) deep.prefix()[0]).items(), tail(deep, depth + 1), suffix, depth);
+            };
+        }
+
+        private Spine deepRight(Object[] prefix, Spine middle, Object[] suffix, int depth) {
+            if (suffix.length > 0) return deep(prefix, middle, suffix, depth);
+            return switch (middle) {
+                case Empty empty -> fromDigit(prefix, depth);
+                case Single single -> deep(prefix, Empty.INSTANCE, ((Node) single.value()).items(), depth);
+                case Deep deep -> deep(prefix, init(deep, depth + 1), ((Node) deep.suffix()[deep.suffix().length - 1]).items(), depth);
+            };
+        }
+
+        // Both trees must be measured by the same monoid and function; the result uses this tree's
+        public FingerTree<V, A> concat(FingerTree<V, A> other) {
+            if (other.isEmpty()) return this;
+            if (isEmpty()) return other;
+            return with(concat(root, new Object[0], other.root, 0));
+        }
+
+        private Spine concat(Spine left, Object[] middle, Spine right, int depth) {
+            if (left instanceof Empty) {
+                Spine result = right;
+                for (int i = middle.length - 1; i >= 0; i--) {
+                    result = prepend(middle[i], result, depth);
+                }
+                return result;
+            }
+            if (right instanceof Empty) {
+                Spine result = left;
+                for (Object value : middle) {
+                    result = append(result, value, depth);
+                }
+                return result;
+            }
+            if (left instanceof Single single) {
+                return prepend(single.value(), concat(Empty.INSTANCE, middle, right, depth), depth);
+            }
+            if (right instanceof Single single) {
+                return append(concat(left, middle, Empty.INSTANCE, depth), single.value(), depth);
+            }
+            Deep first = (Deep) left;
+            Deep second = (Deep) right;
+            Object[] items = new Object[first.suffix().length + middle.length + second.prefix().length];
+            System.arraycopy(first.suffix(), 0, items, 0, first.suffix().length);
+            System.arraycopy(middle, 0, items, first.suffix().length, middle.length);
+            System.arraycopy(second.prefix(), 0, items, first.suffix().length + middle.length, second.prefix().length);
+            Spine spine = concat(first.middle(), nodes(items, depth), second.middle(), depth + 1);
+            V total = monoid.combine(measure(first, depth), monoid.combine(measure(middle, depth), measure(second, depth)));
+            return new Deep(total, first.prefix(), spine, second.suffix());
+        }
+
+        // Groups 2..12 elements into nodes of three, using nodes of two only at the end
+        private Object[] nodes(Object[] items, int depth) {
+            int count = (items.length + 2) / 3;
+            Object[] nodes = new Object[count];
+            int from = 0;
+            for (int i = 0; i < count; i++) {
+                int remaining = items.length - from;
+                int width = remaining == 4 || remaining == 2 ? 2 : 3;
+                nodes[i] = node(Arrays.copyOfRange(items, from, from + width), depth);
+                from += width;
+            }
+            return nodes;
+        }
+
+        // Splits at the first element whose accumulated measure satisfies the (monotone) predicate;
+        // that element starts the right tree. If no prefix satisfies it, the right tree is empty
+        public Pair<FingerTree<V, A>, FingerTree<V, A>> split(Predicate<V> predicate) {
+            if (isEmpty() || !predicate.test(measure())) {
+                return new Pair<>(this, with(Empty.INSTANCE));
+            }
+            Split split = split(predicate, monoid.nil(), root, 0);
+            return new Pair<>(with(split.left()), with(prepend(split.value(), split.right(), 0)));
+        }
+
+        public FingerTree<V, A> takeUntil(Predicate<V> predicate) {
+            return split(predicate).first();
+        }
+
+        public FingerTree<V, A> dropUntil(Predicate<V> predicate) {
+            return split(predicate).second();
+        }
+
+        private Split split(Predicate<V> predicate, V accumulated, Spine spine, int depth) {
+            return switch (spine) {
+                case Empty empty -> throw new IllegalStateException("Cannot split an empty finger tree");
+                case Single single -> new Split(Empty.INSTANCE, single.value(), Empty.INSTANCE);
+                case Deep deep -> {
+                    V afterPrefix = monoid.combine(accumulated, measure(deep.prefix(), depth));
+                    if (predicate.test(afterPrefix)) {
+                        Object[] prefix = deep.prefix();
+                        int index = splitIndex(predicate, accumulated, prefix, depth);
+                        yield new Split(fromDigit(Arrays.copyOf(prefix, index), depth), prefix[index],
+                                deepLeft(Arrays.copyOfRange(prefix, index + 1, prefix.length), deep.middle(), deep.suffix(), depth));
+                    }
+                    V afterMiddle = monoid.combine(afterPrefix, measure(deep.middle(), depth + 1));
+                    if (predicate.test(afterMiddle)) {
+                        Split middle = split(predicate, afterPrefix, deep.middle(), depth + 1);
+                        Object[] items = ((Node) middle.value()).items();
+                        V accumulatedItems = monoid.combine(afterPrefix, measure(middle.left(), depth + 1));
+                        int index = splitIndex(predicate, accumulatedItems, items, depth);
+                        yield new Split(deepRight(deep.prefix(), middle.left(), Arrays.copyOf(items, index), depth), items[index],
+                                deepLeft(Arrays.copyOfRange(items, index + 1, items.length), middle.right(), deep.suffix(), depth));
+                    }
+                    Object[] suffix = deep.suffix();
+                    int index = splitIndex(predicate, afterMiddle, suffix, depth);
+                    yield new Split(deepRight(deep.prefix(), deep.middle(), Arrays.copyOf(suffix, index), depth), suffix[index],
+                            fromDigit(Arrays.copyOfRange(suffix, index + 1, suffix.length), depth));
+                }
+            };
+        }
+
+        private int splitIndex(Predicate<V> predicate, V accumulated, Object[] digit, int depth) {
+            for (int i = 0; i < digit.length - 1; i++) {
+                accumulated = monoid.combine(accumulated, measure(digit[i], depth));
+                if (predicate.test(accumulated)) return i;
+            }
+            return digit.length - 1;
+        }
+
+        // Finds the element a split would start the right tree with, without rebuilding either side
+        @SuppressWarnings("unchecked")
+        public Option<A> lookup(Predicate<V> predicate) {
+            if (isEmpty() || !predicate.test(measure())) return Option.none();
+            V accumulated = monoid.nil();
+            Spine spine = root;
+            int depth = 0;
+            while (true) {
+                Object found;
+                switch (spine) {
+                    case Empty empty -> throw new IllegalStateException("Cannot look up in an empty finger tree");
+                    case Single single -> found = single.value();
+                    case Deep deep -> {
+                        V afterPrefix = monoid.combine(accumulated, measure(deep.prefix(), depth));
+                        Object[] digit = deep.prefix();
+                        if (!predicate.test(afterPrefix)) {
+                            V afterMiddle = monoid.combine(afterPrefix, measure(deep.middle(), depth + 1));
+                            if (predicate.test(afterMiddle)) {
+                                accumulated = afterPrefix;
+                                spine = deep.middle();
+                                depth++;
+                                continue;
+                            }
+                            accumulated = afterMiddle;
+                            digit = deep.suffix();
+                        }
+                        int index = splitIndex(predicate, accumulated, digit, depth);
+                        accumulated = monoid.combine(accumulated, measure(digit, 0, index, depth));
+                        found = digit[index];
+                    }
+                }
+                // Descend from the found node to the element at depth 0
+                while (depth > 0) {
+                    Object[] items = ((Node) found).items();
+                    depth--;
+                    int index = splitIndex(predicate, accumulated, items, depth);
+                    accumulated = monoid.combine(accumulated, measure(items, 0, index, depth));
+                    found = items[index];
+                }
+                return Option.some((A) found);
+            }
+        }
+
+        public <B> B foldLeft(B identity, BiFunction<B, A, B> f) {
+            return foldLeft(root, identity, f, 0);
+        }
+
+        private <B> B foldLeft(Spine spine, B accumulator, BiFunction<B, A, B> f, int depth) {
+            return switch (spine) {
+                case Empty empty -> accumulator;
+                case Single single -> foldLeft(single.value(), accumulator, f, depth);
+                case Deep deep -> {
+                    B result = foldLeft(deep.prefix(), accumulator, f, depth);
+                    result = foldLeft(deep.middle(), result, f, depth + 1);
+                    yield foldLeft(deep.suffix(), result, f, depth);
+                }
+            };
+        }
+
+        private <B> B foldLeft(Object[] digit, B accumulator, BiFunction<B, A, B> f, int depth) {
+            for (Object value : digit) {
+                accumulator = foldLeft(value, accumulator, f, depth);
+            }
+            return accumulator;
+        }
+
+        @SuppressWarnings("unchecked")
+        private <B> B foldLeft(Object value, B accumulator, BiFunction<B, A, B> f, int depth) {
+            return depth == 0 ? f.apply(accumulator, (A) value) : foldLeft(((Node) value).items(), accumulator, f, depth - 1);
+        }
+
+        public List<A> toList() {
+            return foldLeft(new ListBuilder<A>(), ListBuilder::add).build();
+        }
+
+        @Override
+        public String toString() {
+            StringJoiner joiner = new StringJoiner(", ", "FingerTree(", ")");
+            foldLeft(joiner, (result, value) -> result.add(String.valueOf(value)));
+            return joiner.toString();
+        }
+    }
+
+    // Tree data structure
+    public sealed interface Tree<A> permits Leaf, Branch {}
+
+    public record Leaf<A>(A value) implements Tree<A> {}
+
+    public record Branch<A>(Tree<A> left, Tree<A> right) implements Tree<A> {}
+
+    // Evaluated with explicit stacks, so skewed trees of any depth are safe
+    private static final Object COMBINE = new Object();
+
+    @SuppressWarnings("unchecked")
+    public static <A, B> B fold(Tree<A> tree, Function<A, B> leaf, BinaryOperator<B> branch) {
+        Deque<Object> pending = new ArrayDeque<>();
+        ArrayList<B> results = new ArrayList<>();
+        pending.push(tree);
+        while (!pending.isEmpty()) {
+            Object next = pending.pop();
+            if (next == COMBINE) {
+                B right = results.removeLast();
+                B left = results.removeLast();
+                results.add(branch.apply(left, right));
+                continue;
+            }
+            switch ((Tree<A>) next) {
+                case Leaf<A> value -> results.add(leaf.apply(value.value()));
+                case Branch<A> node -> {
+                    pending.push(COMBINE);
+                    pending.push(node.right());
+                    pending.push(node.left());
+                }
+            }
+        }
+        return results.getLast();
+    }
+
+    public static <A> int numberOfNodes(Tree<A> tree) {
+        return fold(tree, value -> 1, (left, right) -> 1 + left + right);
+    }
+
+    public static <A> int maxDepth(Tree<A> tree) {
+        return fold(tree, value -> 0, (left, right) -> 1 + Math.max(left, right));
+    }
+
+    public static <A, B> Tree<B> map(Tree<A> tree, Function<A, B> f) {
+        return fold(tree, value -> (Tree<B>) new Leaf<>(f.apply(value)), Branch::new);
+    }
+
+    // Parallel variants fork at Branch nodes down to forkDepth and fold the remaining subtrees sequentially
+    public static final int DEFAULT_FORK_DEPTH = 12;
+
+    public static <A, B> B parFold(Tree<A> tree, Function<A, B> leaf, BinaryOperator<B> branch) {
+        return parFold(tree, leaf, branch, DEFAULT_FORK_DEPTH);
+    }
+
+    public static <A, B> B parFold(Tree<A> tree, Function<A, B> leaf, BinaryOperator<B> branch, int forkDepth) {
+        if (forkDepth < 0) throw new IllegalArgumentException("Fork depth must not be negative");
+        return ForkJoinPool.commonPool().invoke(new TreeFoldTask<>(tree, leaf, branch, forkDepth));
+    }
+
+    public static <A> int parNumberOfNodes(Tree<A> tree) {
+        return parFold(tree, value -> 1, (left, right) -> 1 + left + right);
+    }
+
+    public static <A> int parMaxDepth(Tree<A> tree) {
+        return parFold(tree, value -> 0, (left, right) -> 1 + Math.max(left, right));
+    }
+
+    public static <A, B> Tree<B> parMap(Tree<A> tree, Function<A, B> f) {
+        return parMap(tree, f, DEFAULT_FORK_DEPTH);
+    }
+
+    public static <A, B> Tree<B> parMap(Tree<A> tree, Function<A, B> f, int forkDepth) {
+        return parFold(tree, value -> (Tree<B>) new Leaf<>(f.apply(value)), Branch::new, forkDepth);
+    }
+
+    private static final class TreeFoldTask<A, B> extends RecursiveTask<B> {
+        private final Tree<A> tree;
+        private final Function<A, B> leaf;
+        private final BinaryOperator<B> branch;
+        private final int forkDepth;
+
+        private TreeFoldTask(Tree<A> tree, Function<A, B> leaf, BinaryOperator<B> branch, int forkDepth) {
+            this.tree = tree;
+            this.leaf = leaf;
+            this.branch = branch;
+            this.forkDepth = forkDepth;
+        }
+
+        @Override
+        protected B compute() {
+            if (forkDepth == 0 || !(tree instanceof Branch<A> node)) {
+                return fold(tree, leaf, branch);
+            }
+            TreeFoldTask<A, B> left = new TreeFoldTask<>(node.left(), leaf, branch, forkDepth - 1);
+            left.fork();
+            B right = new TreeFoldTask<>(node.right(), leaf, branch, forkDepth - 1).compute();
+            return branch.apply(left.join(), right);
+        }
+    }
+
+    // Option type
+    public sealed interface Option<A> permits Some, None {
+        boolean isPresent();
+
+        A get();
+
+        default <B> Option<B> map(Function<A, B> f) {
+            return switch (this) {
+                case Some<A> some -> new Some<>(f.apply(some.value()));
+                case None<A> none -> none();
+            };
+        }
+
+        default A getOrElse(Supplier<A> defaultValue) {
+            return switch (this) {
+                case Some<A> some -> some.value();
+                case None<A> none -> defaultValue.get();
+            };
+        }
+
+        default <B> Option<B> flatMap(Function<A, Option<B>> f) {
+            return switch (this) {
+                case Some<A> some -> f.apply(some.value());
+                case None<A> none -> none();
+            };
+        }
+
+        default Option<A> orElse(Supplier<Option<A>> ob) {
+            return switch (this) {
+                case Some<A> some -> this;
+                case None<A> none -> ob.get();
+            };
+        }
+
+        default Option<A> filter(Predicate<A> f) {
+            return switch (this) {
+                case Some<A> some -> f.test(some.value()) ? this : none();
+                case None<A> none -> this;
+            };
+        }
+
+        @SuppressWarnings("unchecked")
+        static <A> Option<A> none() {
+            return (Option<A>) None.INSTANCE;
+        }
+
+        static <A> Option<A> some(A value) {
+            return new Some<>(value);
+        }
+    }
+
+    public record Some<A>(A value) implements Option<A> {
+        @Override
+        public boolean isPresent() {
+            return true;
+        }
+
+        @Override
+        public A get() {
+            return value;
+        }
+    }
+
+    public record None<A>() implements Option<A> {
+        private static final None<?> INSTANCE = new None<>();
+
+        @Override
+        public boolean isPresent() {
+            return false;
+        }
+
+        @Override
+        public A get() {
+            throw new NoSuchElementException("None.get");
+        }
     }
 
-    public static <A> List<A> prepend(List<A> xs, A x) {
-        return switch (xs) {
-            case Cons<A> cons -> new Cons<>(x, xs);
-            case Nil<A> nil -> List.nil();
-        };
-    }
+    // Primitive specialized Option (int payload stored unboxed)
+    public sealed interface IntOption permits IntSome, IntNone {
+        boolean isPresent();
+
+        int get();
+
+        default IntOption map(IntUnaryOperator f) {
+            return switch (this) {
+                case IntSome some -> new IntSome(f.applyAsInt(some.value()));
+                case IntNone none -> none;
+            };
+        }
+
+        default IntOption flatMap(IntFunction<IntOption> f) {
+            return switch (this) {
+                case IntSome some -> f.apply(some.value());
+                case IntNone none -> none;
+            };
+        }
+
+        default IntOption filter(IntPredicate f) {
+            return switch (this) {
+                case IntSome some -> f.test(some.value()) ? this : none();
+                case IntNone none -> none;
+            };
+        }
+
+        default int getOrElse(IntSupplier defaultValue) {
+            return switch (this) {
+                case IntSome some -> some.value();
+                case IntNone none -> defaultValue.getAsInt();
+            };
+        }
+
+        default IntOption orElse(Supplier<IntOption> ob) {
+            return switch (this) {
+                case IntSome some -> this;
+                case IntNone none -> ob.get();
+            };
+        }
+
+        default Option<Integer> boxed() {
+            return switch (this) {
+                case IntSome some -> new Some<>(some.value());
+                case IntNone none -> Option.none();
+            };
+        }
+
+        static IntOption none() {
+            return IntNone.INSTANCE;
+        }
 
-    public static <A> List<A> append(List<A> xs1, List<A> xs2) {
-        return switch (xs1) {
-            case Nil<A> nil -> xs2;
-            case Cons<A> cons -> new Cons<>(cons.head(), append(cons.tail(), xs2));
-        };
+        static IntOption some(int value) {
+            return new IntSome(value);
+        }
     }
 
-    public static <A> List<A> drop(List<A> xs, int n) {
-        if (n <= 0) return xs;
-        return switch (xs) {
-            case Cons<A> cons -> drop(cons.tail(), n - 1);
-            case Nil<A> nil -> List.nil();
-        };
-    }
+    public record IntSome(int value) implements IntOption {
+        @Override
+        public boolean isPresent() {
+            return true;
+        }
 
-    public static <A> List<A> dropWhile(List<A> xs, Predicate<A> predicate) {
-        return switch (xs) {
-            case Cons<A> cons when predicate.test(cons.head()) -> dropWhile(cons.tail(), predicate);
-            default -> xs;
-        };
+        @Override
+        public int get() {
+            return value;
+        }
     }
 
-    public static <A, B> B foldRight(List<A> xs, B value, BiFunction<A, B, B> f) {
-        return switch (xs) {
-            case Nil<A> nil -> value;
-            case Cons<A> cons -> f.apply(cons.head(), foldRight(cons.tail(), value, f));
-        };
-    }
+    public record IntNone() implements IntOption {
+        private static final IntNone INSTANCE = new IntNone();
 
-    public static <A, B> B foldLeft(List<A> xs, B value, BiFunction<B, A, B> f) {
-        return switch (xs) {
-            case Nil<A> nil -> value;
-            case Cons<A> cons -> foldLeft(cons.tail(), f.apply(value, cons.head()), f);
-        };
-    }
+        @Override
+        public boolean isPresent() {
+            return false;
+        }
 
-    public static <A, B> List<B> map(List<A> xs, Function<A, B> f) {
-        return foldRight(xs, List.<B>empty(), (a, bs) -> new Cons<>(f.apply(a), bs));
+        @Override
+        public int get() {
+            throw new NoSuchElementException("IntNone.get");
+        }
     }
 
-    public static <A> List<A> filter(List<A> xs, Predicate<A> f) {
-        return foldRight(xs, List.<A>empty(), (a, ls) ->
-                f.test(a) ? new Cons<>(a, ls) : ls
-        );
-    }
+    // Primitive specialized Option (long payload stored unboxed)
+    public sealed interface LongOption permits LongSome, LongNone {
+        boolean isPresent();
 
-    public static <A, B> List<B> flatMap(List<A> xa, Function<A, List<B>> f) {
-        return foldRight(xa, List.<B>empty(), (a, lb) -> append(f.apply(a), lb));
-    }
+        long get();
 
-    public static <A> List<A> reverse(List<A> xs) {
-        return foldLeft(xs, List.<A>empty(), (t, h) -> new Cons<>(h, t));
-    }
+        default LongOption map(LongUnaryOperator f) {
+            return switch (this) {
+                case LongSome some -> new LongSome(f.applyAsLong(some.value()));
+                case LongNone none -> none;
+            };
+        }
 
-    // Tree data structure
-    public sealed interface Tree<A> permits Leaf, Branch {}
+        default LongOption flatMap(LongFunction<LongOption> f) {
+            return switch (this) {
+                case LongSome some -> f.apply(some.value());
+                case LongNone none -> none;
+            };
+        }
 
-    public record Leaf<A>(A value) implements Tree<A> {}
+        default LongOption filter(LongPredicate f) {
+            return switch (this) {
+                case LongSome some -> f.test(some.value()) ? this : none();
+                case LongNone none -> none;
+            };
+        }
 
-    public record Branch<A>(Tree<A> left, Tree<A> right) implements Tree<A> {}
+        default long getOrElse(LongSupplier defaultValue) {
+            return switch (this) {
+                case LongSome some -> some.value();
+                case LongNone none -> defaultValue.getAsLong();
+            };
+        }
 
-    public static <A> int numberOfNodes(Tree<A> tree) {
-        return switch (tree) {
-            case Leaf<A> leaf -> 1;
-            case Branch<A> branch -> 1 + numberOfNodes(branch.left()) + numberOfNodes(branch.right());
-        };
+        default LongOption orElse(Supplier<LongOption> ob) {
+            return switch (this) {
+                case LongSome some -> this;
+                case LongNone none -> ob.get();
+            };
+        }
+
+        default Option<Long> boxed() {
+            return switch (this) {
+                case LongSome some -> new Some<>(some.value());
+                case LongNone none -> Option.none();
+            };
+        }
+
+        static LongOption none() {
+            return LongNone.INSTANCE;
+        }
+
+        static LongOption some(long value) {
+            return new LongSome(value);
+        }
     }
 
-    public static <A> int maxDepth(Tree<A> tree) {
-        return switch (tree) {
-            case Leaf<A> leaf -> 0;
-            case Branch<A> branch -> 1 + Math.max(maxDepth(branch.left()), maxDepth(branch.right()));
-        };
+    public record LongSome(long value) implements LongOption {
+        @Override
+        public boolean isPresent() {
+            return true;
+        }
+
+        @Override
+        public long get() {
+            return value;
+        }
     }
 
-    public static <A, B> Tree<B> map(Tree<A> tree, Function<A, B> f) {
-        return switch (tree) {
-            case Leaf<A> leaf -> new Leaf<>(f.apply(leaf.value()));
-            case Branch<A> branch -> new Branch<>(map(branch.left(), f), map(branch.right(), f));
-        };
+    public record LongNone() implements LongOption {
+        private static final LongNone INSTANCE = new LongNone();
+
+        @Override
+        public boolean isPresent() {
+            return false;
+        }
+
+        @Override
+        public long get() {
+            throw new NoSuchElementException("LongNone.get");
+        }
     }
 
-    // Option type
-    public sealed interface Option<A> permits Some, None {
+    // Primitive specialized Option (double payload stored unboxed)
+    public sealed interface DoubleOption permits DoubleSome, DoubleNone {
         boolean isPresent();
 
-        A get();
+        double get();
 
-        default <B> Option<B> map(Function<A, B> f) {
+        default DoubleOption map(DoubleUnaryOperator f) {
             return switch (this) {
-                case Some<A> some -> new Some<>(f.apply(some.value()));
-                case None<A> none -> none();
+                case DoubleSome some -> new DoubleSome(f.applyAsDouble(some.value()));
+                case DoubleNone none -> none;
             };
         }
 
-        default A getOrElse(Supplier<A> defaultValue) {
+        default DoubleOption flatMap(DoubleFunction<DoubleOption> f) {
             return switch (this) {
-                case Some<A> some -> some.value();
-                case None<A> none -> defaultValue.get();
+                case DoubleSome some -> f.apply(some.value());
+                case DoubleNone none -> none;
             };
         }
 
-        default <B> Option<B> flatMap(Function<A, Option<B>> f) {
-            return map(f).getOrElse(Option::none);
+        default DoubleOption filter(DoublePredicate f) {
+            return switch (this) {
+                case DoubleSome some -> f.test(some.value()) ? this : none();
+                case DoubleNone none -> none;
+            };
         }
 
-        default Option<A> orElse(Supplier<Option<A>> ob) {
+        default double getOrElse(DoubleSupplier defaultValue) {
             return switch (this) {
-                case Some<A> some -> this;
-                case None<A> none -> ob.get();
+                case DoubleSome some -> some.value();
+                case DoubleNone none -> defaultValue.getAsDouble();
             };
         }
 
-        default Option<A> filter(Predicate<A> f) {
-            return flatMap(a -> f.test(a) ? new Some<>(a) : none());
+        default DoubleOption orElse(Supplier<DoubleOption> ob) {
+            return switch (this) {
+                case DoubleSome some -> this;
+                case DoubleNone none -> ob.get();
+            };
         }
 
-        @SuppressWarnings("unchecked")
-        static <A> Option<A> none() {
-            return (Option<A>) None.INSTANCE;
+        default Option<Double> boxed() {
+            return switch (this) {
+                case DoubleSome some -> new Some<>(some.value());
+                case DoubleNone none -> Option.none();
+            };
         }
 
-        static <A> Option<A> some(A value) {
-            return new Some<>(value);
+        static DoubleOption none() {
+            return DoubleNone.INSTANCE;
+        }
+
+        static DoubleOption some(double value) {
+            return new DoubleSome(value);
         }
     }
 
-    public record Some<A>(A value) implements Option<A> {
+    public record DoubleSome(double value) implements DoubleOption {
         @Override
         public boolean isPresent() {
             return true;
         }
 
         @Override
-        public A get() {
+        public double get() {
             return value;
         }
     }
 
-    public record None<A>() implements Option<A> {
-        private static final None<?> INSTANCE = new None<>();
+    public record DoubleNone() implements DoubleOption {
+        private static final DoubleNone INSTANCE = new DoubleNone();
 
         @Override
         public boolean isPresent() {
@@ -301,8 +4412,8 @@ public class FunctionalProgramming {
         }
 
         @Override
-        public A get() {
-            throw new NoSuchElementException("None.get");
+        public double get() {
+            throw new NoSuchElementException("DoubleNone.get");
         }
     }
 
@@ -323,6 +4434,71 @@ public class FunctionalProgramming {
                 case Right<E, A> right -> this;
             };
         }
+
+        default <B> Either<E, B> flatMap(Function<A, Either<E, B>> f) {
+            return switch (this) {
+                case Right<E, A> right -> f.apply(right.value());
+                case Left<E, A> left -> new Left<>(left.value());
+            };
+        }
+
+        default <C> C fold(Function<E, C> onLeft, Function<A, C> onRight) {
+            return switch (this) {
+                case Left<E, A> left -> onLeft.apply(left.value());
+                case Right<E, A> right -> onRight.apply(right.value());
+            };
+        }
+
+        default <F> Either<F, A> mapLeft(Function<E, F> f) {
+            return switch (this) {
+                case Left<E, A> left -> new Left<>(f.apply(left.value()));
+                case Right<E, A> right -> new Right<>(right.value());
+            };
+        }
+
+        default <F, B> Either<F, B> bimap(Function<E, F> onLeft, Function<A, B> onRight) {
+            return switch (this) {
+                case Left<E, A> left -> new Left<>(onLeft.apply(left.value()));
+                case Right<E, A> right -> new Right<>(onRight.apply(right.value()));
+            };
+        }
+
+        // traverse and sequence loop over the input and return the first Left without looking at the rest.
+        // List.iterator() steps through chunks in place, so apart from f's results a run allocates one iterator
+        // and the ListBuilder behind the result
+        static <E, A, B> Either<E, List<B>> traverse(List<A> xs, Function<A, Either<E, B>> f) {
+            ListBuilder<B> results = new ListBuilder<>();
+            for (A x : xs) {
+                switch (f.apply(x)) {
+                    case Right<E, B> right -> results.add(right.value());
+                    case Left<E, B> left -> {
+                        return new Left<>(left.value());
+                    }
+                }
+            }
+            return new Right<>(results.build());
+        }
+
+        static <E, A, B> Either<E, List<B>> traverse(A[] xs, Function<A, Either<E, B>> f) {
+            ListBuilder<B> results = new ListBuilder<>();
+            for (A x : xs) {
+                switch (f.apply(x)) {
+                    case Right<E, B> right -> results.add(right.value());
+                    case Left<E, B> left -> {
+                        return new Left<>(left.value());
+                    }
+                }
+            }
+            return new Right<>(results.build());
+        }
+
+        static <E, A> Either<E, List<A>> sequence(List<Either<E, A>> xs) {
+            return traverse(xs, Function.identity());
+        }
+
+        static <E, A> Either<E, List<A>> sequence(Either<E, A>[] xs) {
+            return traverse(xs, Function.identity());
+        }
     }
 
     public record Left<E, A>(E value) implements Either<E, A> {
@@ -354,7 +4530,7 @@ public class FunctionalProgramming {
         default <B> Try<B> map(Function<A, B> f) {
             return switch (this) {
                 case Success<A> success -> Try.of(() -> f.apply(success.value()));
-                case Failure<A> failure -> new Failure<>(failure.exception());
+                case Failure<A> failure -> failure.cast();
             };
         }
 
@@ -367,7 +4543,20 @@ public class FunctionalProgramming {
                         yield new Failure<>(e);
                     }
                 }
-                case Failure<A> failure -> new Failure<>(failure.exception());
+                case Failure<A> failure -> failure.cast();
+            };
+        }
+
+        default Try<A> filter(Predicate<A> predicate) {
+            return filter(predicate, FailureMode.FULL);
+        }
+
+        default Try<A> filter(Predicate<A> predicate, FailureMode mode) {
+            return switch (this) {
+                case Success<A> success -> predicate.test(success.value()) ? this
+                        : mode == FailureMode.LIGHTWEIGHT ? Failure.predicateFailed()
+                        : new Failure<>(new NoSuchElementException("Predicate does not hold"));
+                case Failure<A> failure -> this;
             };
         }
 
@@ -421,6 +4610,48 @@ public class FunctionalProgramming {
         static <A> Try<A> failure(Exception exception) {
             return new Failure<>(exception);
         }
+
+        // Expected failures without throwing; in LIGHTWEIGHT mode the exception carries no stack trace
+        static <A> Try<A> failure(String message) {
+            return failure(message, FailureMode.FULL);
+        }
+
+        static <A> Try<A> failure(String message, FailureMode mode) {
+            return new Failure<>(mode == FailureMode.LIGHTWEIGHT ? new LightweightException(message) : new RuntimeException(message));
+        }
+
+        static <A> Try<A> ofNullable(Supplier<A> supplier) {
+            return ofNullable(supplier, FailureMode.FULL);
+        }
+
+        static <A> Try<A> ofNullable(Supplier<A> supplier, FailureMode mode) {
+            Try<A> result = Try.of(supplier);
+            if (!(result instanceof Success<A> success) || success.value() != null) return result;
+            return mode == FailureMode.LIGHTWEIGHT ? Failure.nullValue() : new Failure<>(new NullPointerException("Value is null"));
+        }
+    }
+
+    // Chosen per call, for the failures Try creates itself: failure(String), a null in ofNullable and a failed filter.
+    // FULL uses ordinary exceptions with stack traces; LIGHTWEIGHT uses LightweightException, preallocated and shared
+    // for the null value and the failed filter. Exceptions thrown by the code passed to of, map or flatMap are kept
+    // as thrown, with the stack trace they filled in; code on a hot path should throw a LightweightException instead
+    public enum FailureMode {
+        FULL, LIGHTWEIGHT
+    }
+
+    // Neither fills in a stack trace nor records suppressed exceptions, so it costs about as much as a small object
+    // and a single instance can be shared between threads
+    public static final class LightweightException extends RuntimeException {
+        public static final LightweightException NULL_VALUE = new LightweightException("Value is null");
+        public static final LightweightException PREDICATE_FAILED = new LightweightException("Predicate does not hold");
+
+        public LightweightException(String message) {
+            super(message, null, false, false);
+        }
+
+        public LightweightException(String message, Throwable cause) {
+            super(message, cause, false, false);
+        }
     }
 
     public record Success<A>(A value) implements Try<A> {
@@ -431,13 +4662,32 @@ public class FunctionalProgramming {
     }
 
     public record Failure<A>(Exception exception) implements Try<A> {
+        private static final Failure<?> NULL_VALUE = new Failure<>(LightweightException.NULL_VALUE);
+        private static final Failure<?> PREDICATE_FAILED = new Failure<>(LightweightException.PREDICATE_FAILED);
+
+        @SuppressWarnings("unchecked")
+        public static <A> Failure<A> nullValue() {
+            return (Failure<A>) NULL_VALUE;
+        }
+
+        @SuppressWarnings("unchecked")
+        public static <A> Failure<A> predicateFailed() {
+            return (Failure<A>) PREDICATE_FAILED;
+        }
+
+        // A failure holds no value, so it can be reused as a failure of any type instead of being copied
+        @SuppressWarnings("unchecked")
+        <B> Failure<B> cast() {
+            return (Failure<B>) this;
+        }
+
         @Override
         public boolean isSuccess() {
             return false;
         }
     }
 
-    // Validation type (for accumulating errors)
+    // Validation type (for accumulating errors; combined error lists are concatenated lazily, so combining is O(1))
     public sealed interface Validation<E, A> permits Valid, Invalid {
         boolean isValid();
 
@@ -470,14 +4720,28 @@ public class FunctionalProgramming {
                 };
                 case Invalid<E, A> ia -> switch (vb) {
                     case Valid<E, B> vbValid -> new Invalid<>(ia.errors());
-                    case Invalid<E, B> vbInvalid -> {
-                        List<E> combined = append(ia.errors(), vbInvalid.errors());
-                        yield new Invalid<>(combined);
-                    }
+                    case Invalid<E, B> vbInvalid -> new Invalid<>(DeferredChunk.concat(ia.errors(), vbInvalid.errors()));
                 };
             };
         }
 
+        default <B, C, D> Validation<E, D> map3(Validation<E, B> vb, Validation<E, C> vc, Function3<A, B, C, D> f) {
+            if (this instanceof Valid<E, A> va && vb instanceof Valid<E, B> vbValid && vc instanceof Valid<E, C> vcValid) {
+                return new Valid<>(f.apply(va.value(), vbValid.value(), vcValid.value()));
+            }
+            return new Invalid<>(DeferredChunk.concat(DeferredChunk.concat(errors(this), errors(vb)), errors(vc)));
+        }
+
+        default <B, C, D, R> Validation<E, R> map4(Validation<E, B> vb, Validation<E, C> vc, Validation<E, D> vd,
+                                                   Function4<A, B, C, D, R> f) {
+            if (this instanceof Valid<E, A> va && vb instanceof Valid<E, B> vbValid && vc instanceof Valid<E, C> vcValid
+                    && vd instanceof Valid<E, D> vdValid) {
+                return new Valid<>(f.apply(va.value(), vbValid.value(), vcValid.value(), vdValid.value()));
+            }
+            List<E> errors = DeferredChunk.concat(DeferredChunk.concat(errors(this), errors(vb)), errors(vc));
+            return new Invalid<>(DeferredChunk.concat(errors, errors(vd)));
+        }
+
         default Either<List<E>, A> toEither() {
             return switch (this) {
                 case Valid<E, A> valid -> new Right<>(valid.value());
@@ -485,6 +4749,39 @@ public class FunctionalProgramming {
             };
         }
 
+        private static <E> List<E> errors(Validation<E, ?> validation) {
+            return validation instanceof Invalid<E, ?> invalid ? invalid.errors() : List.nil();
+        }
+
+        // Applies f to every element, collecting all errors in order; values are kept only while everything is valid
+        static <E, A, B> Validation<E, List<B>> traverse(List<A> xs, Function<A, Validation<E, B>> f) {
+            ListBuilder<B> values = new ListBuilder<>();
+            boolean valid = true;
+            Chain<E> errors = Chain.empty();
+            int errorCount = 0;
+            for (A x : xs) {
+                switch (f.apply(x)) {
+                    case Valid<E, B> value -> {
+                        if (valid) values.add(value.value());
+                    }
+                    case Invalid<E, B> invalid -> {
+                        valid = false;
+                        errors = errors.concat(DeferredChunk.chain(invalid.errors()));
+                        errorCount += invalid.errors().size();
+                    }
+                }
+            }
+            return valid ? new Valid<>(values.build()) : new Invalid<>(DeferredChunk.of(errors, errorCount));
+        }
+
+        static <E, A> Validation<E, List<A>> sequence(List<Validation<E, A>> validations) {
+            return traverse(validations, Function.identity());
+        }
+
+        static <E, A, B> Validation<E, B> mapN(List<Validation<E, A>> validations, Function<List<A>, B> f) {
+            return sequence(validations).map(f);
+        }
+
         static <E, A> Validation<E, A> valid(A value) {
             return new Valid<>(value);
         }
@@ -498,6 +4795,16 @@ public class FunctionalProgramming {
         }
     }
 
+    @FunctionalInterface
+    public interface Function3<A, B, C, R> {
+        R apply(A a, B b, C c);
+    }
+
+    @FunctionalInterface
+    public interface Function4<A, B, C, D, R> {
+        R apply(A a, B b, C c, D d);
+    }
+
     public record Valid<E, A>(A value) implements Validation<E, A> {
         @Override
         public boolean isValid() {
@@ -552,17 +4859,14 @@ public class FunctionalProgramming {
         }
 
         public List<A> toList() {
-            return toListHelper(this, List.nil());
-        }
-
-        private static <A> List<A> toListHelper(Stream<A> stream, List<A> acc) {
-            return switch (stream.uncons()) {
-                case Some<Pair<A, Stream<A>>> some -> {
-                    Pair<A, Stream<A>> pair = some.value();
-                    yield toListHelper(pair.second(), new Cons<>(pair.first(), acc));
-                }
-                case None<Pair<A, Stream<A>>> none -> reverse(acc);
-            };
+            ListBuilder<A> builder = new ListBuilder<>();
+            Stream<A> stream = this;
+            while (stream.uncons() instanceof Some<Pair<A, Stream<A>>> some) {
+                Pair<A, Stream<A>> pair = some.value();
+                builder.add(pair.first());
+                stream = pair.second();
+            }
+            return builder.build();
         }
 
         public Stream<A> take(int n) {
@@ -676,6 +4980,99 @@ public class FunctionalProgramming {
         }
     };
 
+    // foldMap (parallel variants split the elements into balanced ranges reduced on the common ForkJoinPool)
+    public static final int DEFAULT_FOLD_THRESHOLD = 4096;
+
+    public static <A, B> B foldMap(List<A> xs, Function<A, B> f, Monoid<B> monoid) {
+        return foldLeft(xs, monoid.nil(), (b, a) -> monoid.combine(b, f.apply(a)));
+    }
+
+    public static <A, B> B foldMap(A[] xs, Function<A, B> f, Monoid<B> monoid) {
+        return new FoldMapTask<A, B>(xs, 0, xs.length, f, monoid, Integer.MAX_VALUE).compute();
+    }
+
+    public static <A, B> B foldMap(Tree<A> tree, Function<A, B> f, Monoid<B> monoid) {
+        return foldMap(leaves(tree), f, monoid);
+    }
+
+    public static <A, B> B parFoldMap(List<A> xs, Function<A, B> f, Monoid<B> monoid) {
+        return parFoldMap(xs, f, monoid, DEFAULT_FOLD_THRESHOLD);
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <A, B> B parFoldMap(List<A> xs, Function<A, B> f, Monoid<B> monoid, int threshold) {
+        return parFoldMap((A[]) toArray(xs), f, monoid, threshold);
+    }
+
+    public static <A, B> B parFoldMap(A[] xs, Function<A, B> f, Monoid<B> monoid) {
+        return parFoldMap(xs, f, monoid, DEFAULT_FOLD_THRESHOLD);
+    }
+
+    public static <A, B> B parFoldMap(A[] xs, Function<A, B> f, Monoid<B> monoid, int threshold) {
+        if (threshold < 1) throw new IllegalArgumentException("Threshold must be positive");
+        return ForkJoinPool.commonPool().invoke(new FoldMapTask<>(xs, 0, xs.length, f, monoid, threshold));
+    }
+
+    public static <A, B> B parFoldMap(Tree<A> tree, Function<A, B> f, Monoid<B> monoid) {
+        return parFoldMap(tree, f, monoid, DEFAULT_FOLD_THRESHOLD);
+    }
+
+    // Leaves are flattened first, so the split stays balanced however skewed the tree is
+    public static <A, B> B parFoldMap(Tree<A> tree, Function<A, B> f, Monoid<B> monoid, int threshold) {
+        return parFoldMap(leaves(tree), f, monoid, threshold);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <A> A[] leaves(Tree<A> tree) {
+        ArrayList<A> leaves = new ArrayList<>();
+        Deque<Tree<A>> pending = new ArrayDeque<>();
+        pending.push(tree);
+        while (!pending.isEmpty()) {
+            switch (pending.pop()) {
+                case Leaf<A> leaf -> leaves.add(leaf.value());
+                case Branch<A> branch -> {
+                    pending.push(branch.right());
+                    pending.push(branch.left());
+                }
+            }
+        }
+        return (A[]) leaves.toArray();
+    }
+
+    private static final class FoldMapTask<A, B> extends RecursiveTask<B> {
+        private final A[] xs;
+        private final int from;
+        private final int to;
+        private final Function<A, B> f;
+        private final Monoid<B> monoid;
+        private final int threshold;
+
+        private FoldMapTask(A[] xs, int from, int to, Function<A, B> f, Monoid<B> monoid, int threshold) {
+            this.xs = xs;
+            this.from = from;
+            this.to = to;
+            this.f = f;
+            this.monoid = monoid;
+            this.threshold = threshold;
+        }
+
+        @Override
+        protected B compute() {
+            if (to - from <= threshold) {
+                B result = monoid.nil();
+                for (int i = from; i < to; i++) {
+                    result = monoid.combine(result, f.apply(xs[i]));
+                }
+                return result;
+            }
+            int middle = (from + to) >>> 1;
+            FoldMapTask<A, B> left = new FoldMapTask<>(xs, from, middle, f, monoid, threshold);
+            left.fork();
+            B right = new FoldMapTask<>(xs, middle, to, f, monoid, threshold).compute();
+            return monoid.combine(left.join(), right);
+        }
+    }
+
     // IO Monad
     @FunctionalInterface
     public interface IO<A> {
@@ -781,15 +5178,13 @@ public class FunctionalProgramming {
     }
 
     static <A> void printList(List<A> list) {
-        if (list instanceof Nil) {
-            System.out.println();
-            return;
-        }
-        Cons<A> cons = (Cons<A>) list;
-        System.out.print(cons.head());
-        if (!(cons.tail() instanceof Nil)) {
-            System.out.print(", ");
+        Iterator<A> elements = list.iterator();
+        while (elements.hasNext()) {
+            System.out.print(elements.next());
+            if (elements.hasNext()) {
+                System.out.print(", ");
+            }
         }
-        printList(cons.tail());
+        System.out.println();
     }
 }
\ No newline at end of file
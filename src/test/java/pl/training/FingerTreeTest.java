@@ -0,0 +1,133 @@
+package pl.training;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static pl.training.FunctionalProgramming.*;
+
+class FingerTreeTest {
+
+    private static java.util.List<Integer> toJava(FingerTree<Integer, Integer> tree) {
+        return tree.foldLeft(new ArrayList<>(), (result, x) -> {
+            result.add(x);
+            return result;
+        });
+    }
+
+    private static void assertSameSequence(java.util.List<Integer> expected, FingerTree<Integer, Integer> actual) {
+        assertEquals(expected, toJava(actual));
+        assertEquals(expected.size(), actual.measure());
+        assertEquals(expected.isEmpty(), actual.isEmpty());
+    }
+
+    private static FingerTree<Integer, Integer> randomTree(Random random, ArrayList<Integer> expected, int size) {
+        FingerTree<Integer, Integer> tree = FingerTree.indexed();
+        for (int i = 0; i < size; i++) {
+            int value = random.nextInt(1_000);
+            if (random.nextBoolean()) {
+                tree = tree.append(value);
+                expected.add(value);
+            } else {
+                tree = tree.prepend(value);
+                expected.addFirst(value);
+            }
+        }
+        return tree;
+    }
+
+    @Test
+    void matchesArrayList() {
+        Random random = new Random(5);
+        for (int round = 0; round < 300; round++) {
+            FingerTree<Integer, Integer> tree = FingerTree.indexed();
+            ArrayList<Integer> expected = new ArrayList<>();
+            for (int i = 0, operations = random.nextInt(300); i < operations; i++) {
+                int value = random.nextInt(1_000);
+                switch (random.nextInt(6)) {
+                    case 0, 1 -> {
+                        tree = tree.prepend(value);
+                        expected.addFirst(value);
+                    }
+                    case 2, 3 -> {
+                        tree = tree.append(value);
+                        expected.add(value);
+                    }
+                    case 4 -> {
+                        if (!expected.isEmpty()) {
+                            assertEquals(expected.getFirst(), tree.head());
+                            tree = tree.tail();
+                            expected.removeFirst();
+                        }
+                    }
+                    default -> {
+                        if (!expected.isEmpty()) {
+                            assertEquals(expected.getLast(), tree.last());
+                            tree = tree.init();
+                            expected.removeLast();
+                        }
+                    }
+                }
+                if (!expected.isEmpty()) {
+                    int index = random.nextInt(expected.size());
+                    assertEquals(Option.some(expected.get(index)), tree.lookup(size -> size > index));
+                }
+                assertEquals(expected.size(), tree.measure());
+            }
+            assertSameSequence(expected, tree);
+        }
+    }
+
+    @Test
+    void concatenatesLikeAddAll() {
+        Random random = new Random(6);
+        for (int round = 0; round < 200; round++) {
+            ArrayList<Integer> left = new ArrayList<>();
+            ArrayList<Integer> right = new ArrayList<>();
+            FingerTree<Integer, Integer> leftTree = randomTree(random, left, random.nextInt(200));
+            FingerTree<Integer, Integer> rightTree = randomTree(random, right, random.nextInt(200));
+            ArrayList<Integer> expected = new ArrayList<>(left);
+            expected.addAll(right);
+            assertSameSequence(expected, leftTree.concat(rightTree));
+            assertSameSequence(left, leftTree);
+            assertSameSequence(right, rightTree);
+        }
+    }
+
+    @Test
+    void splitsLikeSubList() {
+        Random random = new Random(7);
+        for (int round = 0; round < 200; round++) {
+            ArrayList<Integer> expected = new ArrayList<>();
+            FingerTree<Integer, Integer> tree = randomTree(random, expected, random.nextInt(500));
+            int index = random.nextInt(expected.size() + 1);
+            Pair<FingerTree<Integer, Integer>, FingerTree<Integer, Integer>> parts = tree.split(size -> size > index);
+            assertSameSequence(expected.subList(0, index), parts.first());
+            assertSameSequence(expected.subList(index, expected.size()), parts.second());
+            assertSameSequence(expected.subList(0, index), tree.takeUntil(size -> size > index));
+            assertSameSequence(expected.subList(index, expected.size()), tree.dropUntil(size -> size > index));
+        }
+    }
+
+    @Test
+    void handlesManyElements() {
+        FingerTree<Integer, Integer> tree = FingerTree.indexed();
+        ArrayDeque<Integer> deque = new ArrayDeque<>();
+        for (int i = 0; i < 1_000_000; i++) {
+            if (i % 2 == 0) {
+                tree = tree.append(i);
+                deque.addLast(i);
+            } else {
+                tree = tree.prepend(i);
+                deque.addFirst(i);
+            }
+        }
+        ArrayList<Integer> expected = new ArrayList<>(deque);
+        assertEquals(expected.size(), tree.measure());
+        assertEquals(Option.some(expected.get(765_432)), tree.lookup(size -> size > 765_432));
+        assertEquals(expected, toJava(FingerTree.indexed(tree.toList())));
+    }
+}
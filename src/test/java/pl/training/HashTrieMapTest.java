@@ -0,0 +1,102 @@
+package pl.training;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static pl.training.FunctionalProgramming.*;
+
+class HashTrieMapTest {
+
+    // Only eight distinct hash codes, so most keys collide and end up in collision nodes
+    private record Collider(int id) {
+        @Override
+        public int hashCode() {
+            return id % 8;
+        }
+    }
+
+    private static void assertSameEntries(Map<Object, Integer> expected, HashTrieMap<Object, Integer> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (Map.Entry<Object, Integer> entry : expected.entrySet()) {
+            assertEquals(Option.some(entry.getValue()), actual.get(entry.getKey()));
+        }
+        HashMap<Object, Integer> visited = new HashMap<>();
+        actual.forEach(visited::put);
+        assertEquals(expected, visited);
+        assertEquals(expected.size(), actual.toList().size());
+    }
+
+    private static void checkAgainstHashMap(Random random, int operations, int keyRange, boolean colliding) {
+        HashTrieMap<Object, Integer> map = HashTrieMap.empty();
+        HashTrieMap.Transient<Object, Integer> builder = HashTrieMap.<Object, Integer>empty().asTransient();
+        HashMap<Object, Integer> expected = new HashMap<>();
+        ArrayList<HashTrieMap<Object, Integer>> snapshots = new ArrayList<>();
+        ArrayList<HashMap<Object, Integer>> expectedSnapshots = new ArrayList<>();
+        for (int i = 0; i < operations; i++) {
+            int id = random.nextInt(keyRange);
+            Object key = colliding ? new Collider(id) : id;
+            switch (random.nextInt(3)) {
+                case 0 -> {
+                    map = map.remove(key);
+                    builder.remove(key);
+                    expected.remove(key);
+                }
+                case 1 -> {
+                    map = map.put(key, i);
+                    builder.put(key, i);
+                    expected.put(key, i);
+                }
+                default -> {
+                    map = map.merge(key, 1, Integer::sum);
+                    builder.merge(key, 1, Integer::sum);
+                    expected.merge(key, 1, Integer::sum);
+                }
+            }
+            assertEquals(expected.size(), map.size());
+            assertEquals(expected.containsKey(key), map.containsKey(key));
+            if (i % (operations / 10) == 0) {
+                snapshots.add(map);
+                expectedSnapshots.add(new HashMap<>(expected));
+            }
+        }
+        assertSameEntries(expected, map);
+        assertSameEntries(expected, builder.persistent());
+        for (int i = 0; i < snapshots.size(); i++) {
+            assertSameEntries(expectedSnapshots.get(i), snapshots.get(i));
+        }
+        for (Object key : new ArrayList<>(expected.keySet())) {
+            map = map.remove(key);
+        }
+        assertTrue(map.isEmpty());
+    }
+
+    @Test
+    void matchesHashMap() {
+        checkAgainstHashMap(new Random(1), 200_000, 5_000, false);
+    }
+
+    @Test
+    void matchesHashMapWhenHashesCollide() {
+        checkAgainstHashMap(new Random(2), 50_000, 300, true);
+    }
+
+    @Test
+    void missingKeysAreAbsent() {
+        HashTrieMap<Object, Integer> map = HashTrieMap.<Object, Integer>empty().put(1, 1).put(new Collider(9), 2);
+        assertEquals(Option.none(), map.get(2));
+        assertEquals(Option.none(), map.get(new Collider(1)));
+        assertSame(map, map.remove(3));
+    }
+
+    @Test
+    void transientCannotBeUsedAfterPersistent() {
+        HashTrieMap.Transient<String, Integer> builder = HashTrieMap.<String, Integer>empty().asTransient();
+        builder.put("a", 1).persistent();
+        assertThrows(IllegalStateException.class, () -> builder.put("b", 2));
+    }
+}
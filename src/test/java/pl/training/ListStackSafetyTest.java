@@ -0,0 +1,147 @@
+package pl.training;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static pl.training.FunctionalProgramming.*;
+
+class ListStackSafetyTest {
+
+    private static final int SIZE = 10_000_000;
+    private static final long SUM = (long) (SIZE / 100) * 4950;
+
+    // Far too small for one frame per element, so any recursion over the list fails with StackOverflowError
+    private static final long STACK_SIZE = 256 * 1024;
+
+    private static void withSmallStack(Runnable check) throws Throwable {
+        Throwable[] failure = new Throwable[1];
+        Thread thread = new Thread(null, () -> {
+            try {
+                check.run();
+            } catch (Throwable e) {
+                failure[0] = e;
+            }
+        }, "small-stack", STACK_SIZE);
+        thread.start();
+        thread.join();
+        if (failure[0] != null) throw failure[0];
+    }
+
+    // Values repeat every 100 elements, so they all come from the Integer cache and only the list itself is allocated
+    private static List<Integer> chunked(int size) {
+        Integer[] values = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            values[i] = i % 100;
+        }
+        return List.of(values);
+    }
+
+    private static List<Integer> prepended(int size) {
+        List<Integer> result = List.nil();
+        for (int i = size - 1; i >= 0; i--) {
+            result = new Cons<>(i % 100, result);
+        }
+        return result;
+    }
+
+    @Test
+    void foldsLargeLists() throws Throwable {
+        List<Integer> xs = chunked(SIZE);
+        List<Integer> cells = prepended(SIZE);
+        withSmallStack(() -> {
+            assertEquals(SUM, foldLeft(xs, 0L, (sum, x) -> sum + x));
+            assertEquals(SUM, foldRight(xs, 0L, (x, sum) -> sum + x));
+            assertEquals(SUM, foldLeft(cells, 0L, (sum, x) -> sum + x));
+            assertEquals(SUM, foldRight(cells, 0L, (x, sum) -> sum + x));
+            assertEquals(SIZE, cells.size());
+        });
+    }
+
+    @Test
+    void transformsLargeLists() throws Throwable {
+        List<Integer> xs = chunked(SIZE);
+        withSmallStack(() -> {
+            assertEquals(SUM + SIZE, foldLeft(map(xs, x -> x + 1), 0L, (sum, x) -> sum + x));
+            assertEquals(SIZE / 2, filter(xs, FunctionalProgramming::isEven).size());
+            assertEquals(2 * SIZE, flatMap(xs, x -> List.of(x, x)).size());
+            assertEquals(2 * SIZE, append(xs, xs).size());
+            assertEquals(SIZE - 1, drop(xs, 1).size());
+            assertEquals(4950, sum(drop(xs, SIZE - 100)));
+        });
+    }
+
+    @Test
+    void reversesAndSortsLargeLists() throws Throwable {
+        List<Integer> cells = prepended(SIZE);
+        withSmallStack(() -> {
+            List<Integer> reversed = reverse(cells);
+            assertEquals(SIZE, reversed.size());
+            assertEquals(99, ((Cons<Integer>) reversed.uncons()).head());
+            List<Integer> sorted = sort(cells);
+            assertEquals(0, ((Cons<Integer>) sorted.uncons()).head());
+            assertEquals(99, ((Cons<Integer>) drop(sorted, SIZE - 1).uncons()).head());
+        });
+    }
+
+    @Test
+    void dropsWhileAcrossCellsAndChunks() throws Throwable {
+        List<Integer> xs = new Cons<>(-1, new Cons<>(-2, map(chunked(SIZE), x -> x < 100 ? -x - 3 : x)));
+        withSmallStack(() -> {
+            assertTrue(dropWhile(xs, x -> x < 0).isEmpty());
+            assertEquals(SIZE + 1, dropWhile(xs, x -> x == -1).size());
+        });
+    }
+
+    @Test
+    void comparesAndHashesLargeLists() throws Throwable {
+        List<Integer> xs = chunked(SIZE);
+        List<Integer> cells = prepended(SIZE);
+        withSmallStack(() -> {
+            assertEquals(xs, cells);
+            assertEquals(cells, xs);
+            assertEquals(xs.hashCode(), cells.hashCode());
+            assertNotEquals(xs, new Cons<>(0, cells));
+            assertNotEquals(xs, map(xs, x -> x == 99 ? 98 : x));
+        });
+    }
+
+    @Test
+    void iteratesLargeLists() throws Throwable {
+        List<Integer> cells = prepended(SIZE);
+        withSmallStack(() -> {
+            long sum = 0;
+            for (int x : cells) {
+                sum += x;
+            }
+            assertEquals(SUM, sum);
+            assertEquals(SUM, cells.stream().mapToLong(Integer::longValue).sum());
+            assertEquals(SUM, chunked(SIZE).parallelStream().mapToLong(Integer::longValue).sum());
+        });
+    }
+
+    @Test
+    void unconsesEveryElementOfALargeList() throws Throwable {
+        List<Integer> xs = chunked(SIZE);
+        withSmallStack(() -> {
+            long sum = 0;
+            List<Integer> current = xs;
+            while (current.uncons() instanceof Cons<Integer>(var head, var tail)) {
+                sum += head;
+                current = tail;
+            }
+            assertEquals(SUM, sum);
+        });
+    }
+
+    @Test
+    void concatenatesLargeChains() throws Throwable {
+        withSmallStack(() -> {
+            Chain<Integer> chain = Chain.empty();
+            for (int i = 0; i < SIZE; i++) {
+                chain = chain.append(i % 100);
+            }
+            assertEquals(SUM, chain.foldLeft(0L, (sum, x) -> sum + x));
+            assertEquals(SIZE, chain.toList().size());
+        });
+    }
+}
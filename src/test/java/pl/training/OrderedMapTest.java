@@ -0,0 +1,134 @@
+package pl.training;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static pl.training.FunctionalProgramming.*;
+
+class OrderedMapTest {
+
+    private static Option<Pair<Integer, Integer>> entry(Map.Entry<Integer, Integer> entry) {
+        return entry == null ? Option.none() : Option.some(new Pair<>(entry.getKey(), entry.getValue()));
+    }
+
+    private static Option<Integer> element(Integer value) {
+        return value == null ? Option.none() : Option.some(value);
+    }
+
+    private static java.util.List<Pair<Integer, Integer>> entries(Map<Integer, Integer> map) {
+        java.util.List<Pair<Integer, Integer>> result = new ArrayList<>();
+        map.forEach((key, value) -> result.add(new Pair<>(key, value)));
+        return result;
+    }
+
+    private static <A> java.util.List<A> toJava(List<A> xs) {
+        return foldLeft(xs, new ArrayList<>(), (result, x) -> {
+            result.add(x);
+            return result;
+        });
+    }
+
+    private static void assertSameMap(TreeMap<Integer, Integer> expected, OrderedMap<Integer, Integer> actual) {
+        assertEquals(expected.size(), actual.size());
+        assertEquals(entries(expected), toJava(actual.toList()));
+        assertEquals(new ArrayList<>(expected.keySet()), toJava(actual.keys()));
+        assertEquals(entry(expected.firstEntry()), actual.min());
+        assertEquals(entry(expected.lastEntry()), actual.max());
+    }
+
+    private static void checkAgainstTreeMap(OrderedMap<Integer, Integer> initial, Comparator<Integer> comparator) {
+        Random random = new Random(3);
+        OrderedMap<Integer, Integer> map = initial;
+        TreeMap<Integer, Integer> expected = new TreeMap<>(comparator);
+        ArrayList<OrderedMap<Integer, Integer>> snapshots = new ArrayList<>();
+        ArrayList<TreeMap<Integer, Integer>> expectedSnapshots = new ArrayList<>();
+        for (int i = 0; i < 100_000; i++) {
+            int key = random.nextInt(2_000);
+            if (random.nextInt(3) == 0) {
+                map = map.remove(key);
+                expected.remove(key);
+            } else {
+                map = map.put(key, i);
+                expected.put(key, i);
+            }
+            assertEquals(expected.size(), map.size());
+            int probe = random.nextInt(2_100) - 50;
+            assertEquals(element(expected.get(probe)), map.get(probe));
+            assertEquals(expected.containsKey(probe), map.containsKey(probe));
+            assertEquals(entry(expected.floorEntry(probe)), map.floor(probe));
+            assertEquals(entry(expected.ceilingEntry(probe)), map.ceiling(probe));
+            if (i % 1_000 == 0) {
+                int from = random.nextInt(2_000);
+                int to = random.nextInt(2_000);
+                if (comparator.compare(from, to) <= 0) {
+                    assertEquals(entries(expected.subMap(from, true, to, false)), toJava(map.range(from, to)));
+                }
+            }
+            if (i % 10_000 == 0) {
+                snapshots.add(map);
+                expectedSnapshots.add(new TreeMap<>(expected));
+            }
+        }
+        assertSameMap(expected, map);
+        for (int i = 0; i < snapshots.size(); i++) {
+            assertSameMap(expectedSnapshots.get(i), snapshots.get(i));
+        }
+    }
+
+    @Test
+    void matchesTreeMap() {
+        checkAgainstTreeMap(OrderedMap.empty(), Comparator.naturalOrder());
+    }
+
+    @Test
+    void matchesTreeMapWithACustomComparator() {
+        checkAgainstTreeMap(OrderedMap.empty(Comparator.reverseOrder()), Comparator.reverseOrder());
+    }
+
+    @Test
+    void buildsFromASortedList() {
+        TreeMap<Integer, Integer> expected = new TreeMap<>();
+        ListBuilder<Pair<Integer, Integer>> sorted = new ListBuilder<>();
+        for (int i = 0; i < 10_000; i++) {
+            expected.put(2 * i, i);
+            sorted.add(new Pair<>(2 * i, i));
+        }
+        OrderedMap<Integer, Integer> map = OrderedMap.fromSortedList(sorted.build());
+        assertSameMap(expected, map);
+        assertEquals(entry(expected.floorEntry(5)), map.floor(5));
+        assertSameMap(new TreeMap<>(expected.tailMap(1, false)), map.remove(0));
+    }
+
+    @Test
+    void setMatchesTreeSet() {
+        Random random = new Random(4);
+        OrderedSet<Integer> set = OrderedSet.empty();
+        TreeSet<Integer> expected = new TreeSet<>();
+        for (int i = 0; i < 100_000; i++) {
+            int value = random.nextInt(2_000);
+            if (random.nextInt(3) == 0) {
+                set = set.remove(value);
+                expected.remove(value);
+            } else {
+                set = set.add(value);
+                expected.add(value);
+            }
+            int probe = random.nextInt(2_100) - 50;
+            assertEquals(expected.size(), set.size());
+            assertEquals(expected.contains(probe), set.contains(probe));
+            assertEquals(element(expected.floor(probe)), set.floor(probe));
+            assertEquals(element(expected.ceiling(probe)), set.ceiling(probe));
+        }
+        assertEquals(new ArrayList<>(expected), toJava(set.toList()));
+        assertEquals(new ArrayList<>(expected.subSet(100, 900)), toJava(set.range(100, 900)));
+        assertEquals(element(expected.first()), set.min());
+        assertEquals(element(expected.last()), set.max());
+    }
+}
@@ -0,0 +1,99 @@
+package pl.training;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static pl.training.FunctionalProgramming.*;
+
+class PrimitiveListTest {
+
+    private static final int SIZE = 1_000;
+
+    private static final int[] INTS = IntStream.range(0, SIZE).toArray();
+
+    // The same elements built in ways that chunk them differently: one shared array, one cell per prepend,
+    // copied from a boxed List, and views left over from tail, map and filter
+    private static IntList[] intLists() {
+        IntList prepended = IntList.empty();
+        for (int i = SIZE - 1; i >= 0; i--) {
+            prepended = prepended.prepend(INTS[i]);
+        }
+        IntList longer = IntList.of(IntStream.range(-1, SIZE).toArray());
+        return new IntList[]{
+                IntList.of(INTS),
+                prepended,
+                IntList.fromList(IntList.of(INTS).toList()),
+                longer.tail(),
+                longer.map(x -> x + 1).map(x -> x - 1).tail(),
+                longer.filter(x -> x >= 0),
+                IntList.of(INTS).reverse().reverse()
+        };
+    }
+
+    @Test
+    void intListsAreEqualWhateverTheirChunking() {
+        for (IntList left : intLists()) {
+            for (IntList right : intLists()) {
+                assertEquals(left, right);
+                assertEquals(left.hashCode(), right.hashCode());
+            }
+            assertEquals(Arrays.hashCode(INTS), left.hashCode());
+            assertArrayEquals(INTS, left.toArray());
+        }
+    }
+
+    @Test
+    void intListsWithDifferentElementsAreNotEqual() {
+        IntList xs = IntList.of(INTS);
+        assertNotEquals(xs, xs.tail());
+        assertNotEquals(xs, xs.map(x -> x == SIZE - 1 ? 0 : x));
+        assertNotEquals(xs, xs.prepend(0));
+        assertNotEquals(xs.prepend(1), xs.prepend(2));
+        assertNotEquals(IntList.empty(), IntList.of(0));
+        assertEquals(IntList.empty(), IntList.of());
+        assertEquals(IntList.empty(), IntList.of(1).tail());
+        assertNotEquals(xs, LongList.of(Arrays.stream(INTS).asLongStream().toArray()));
+    }
+
+    @Test
+    void intListToListKeepsElementsAndOrder() {
+        List<Integer> boxed = IntList.of(INTS).toList();
+        assertEquals(SIZE, boxed.size());
+        assertEquals(List.of(IntStream.range(0, SIZE).boxed().toArray(Integer[]::new)), boxed);
+        assertEquals(List.nil(), IntList.empty().toList());
+    }
+
+    @Test
+    void longListsAreEqualWhateverTheirChunking() {
+        long[] values = Arrays.stream(INTS).asLongStream().map(x -> x << 33).toArray();
+        LongList prepended = LongList.empty();
+        for (int i = values.length - 1; i >= 0; i--) {
+            prepended = prepended.prepend(values[i]);
+        }
+        LongList chunked = LongList.of(values);
+        assertEquals(chunked, prepended);
+        assertEquals(prepended, LongList.fromList(chunked.toList()));
+        assertEquals(Arrays.hashCode(values), chunked.hashCode());
+        assertEquals(Arrays.hashCode(values), prepended.hashCode());
+        assertNotEquals(chunked, chunked.map(x -> x + 1));
+    }
+
+    // Same contract as Arrays.equals(double[], double[]): NaN equals NaN, 0.0 and -0.0 differ
+    @Test
+    void doubleListsCompareLikeArraysEquals() {
+        double[] values = {1.5, Double.NaN, 0.0, -2.25};
+        DoubleList prepended = DoubleList.empty();
+        for (int i = values.length - 1; i >= 0; i--) {
+            prepended = prepended.prepend(values[i]);
+        }
+        DoubleList chunked = DoubleList.of(values);
+        assertEquals(chunked, prepended);
+        assertEquals(Arrays.hashCode(values), chunked.hashCode());
+        assertEquals(Arrays.hashCode(values), prepended.hashCode());
+        assertNotEquals(chunked, DoubleList.of(1.5, Double.NaN, -0.0, -2.25));
+        assertEquals(chunked, DoubleList.fromList(chunked.toList()));
+    }
+}